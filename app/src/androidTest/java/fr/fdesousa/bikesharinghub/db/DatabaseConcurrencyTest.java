@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import fr.fdesousa.bikesharinghub.models.BikeNetworkInfo;
+import fr.fdesousa.bikesharinghub.models.BikeNetworkLocation;
+import fr.fdesousa.bikesharinghub.models.Station;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads while a refresh holds a write transaction open: with write-ahead logging they complete
+ * without waiting for the transaction and only see committed stations.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseConcurrencyTest {
+    private static final String TAG = DatabaseConcurrencyTest.class.getSimpleName();
+    private static final String NETWORK = "test-network-a";
+    private static final long READ_TIMEOUT_MS = 2000;
+
+    private Context mContext;
+    private StationsDataSource mStationsDataSource;
+    private NetworksDataSource mNetworksDataSource;
+    private ArrayList<BikeNetworkInfo> mSavedNetworks;
+    private ExecutorService mReaderExecutor;
+    private Thread mWriter;
+    private final CountDownLatch mWriteStarted = new CountDownLatch(1);
+    private final CountDownLatch mWriteReleased = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mStationsDataSource = new StationsDataSource(mContext);
+        mNetworksDataSource = new NetworksDataSource(mContext);
+        mSavedNetworks = mNetworksDataSource.getNetworkInfoList();
+        clearStations(mContext);
+        ArrayList<BikeNetworkInfo> networks = new ArrayList<>();
+        networks.add(new BikeNetworkInfo(NETWORK, NETWORK, "",
+                new BikeNetworkLocation(48.85, 2.35, "Paris", "FR")));
+        mNetworksDataSource.storeNetworks(networks);
+        ArrayList<Station> stations = new ArrayList<>();
+        stations.add(new Station("a1", "Bastille", 1652520391000L, 48.85, 2.36, 5, 10, NETWORK));
+        mStationsDataSource.storeStations(stations, Collections.singletonList(NETWORK));
+        mReaderExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        /* A failed assertion must not leave the transaction open */
+        mWriteReleased.countDown();
+        if (mWriter != null) {
+            mWriter.join();
+        }
+        mReaderExecutor.shutdown();
+        clearStations(mContext);
+        mNetworksDataSource.storeNetworks(mSavedNetworks);
+    }
+
+    @Test
+    public void read_completesWhileWriteTransactionIsOpen() throws Exception {
+        holdWriteTransaction();
+
+        long startTime = SystemClock.elapsedRealtime();
+        Future<ArrayList<Station>> stations = mReaderExecutor.submit(
+                new Callable<ArrayList<Station>>() {
+            @Override
+            public ArrayList<Station> call() {
+                return mStationsDataSource.getStations();
+            }
+        });
+        Future<Station> station = mReaderExecutor.submit(new Callable<Station>() {
+            @Override
+            public Station call() {
+                return mStationsDataSource.getStation("a1");
+            }
+        });
+
+        /* The uncommitted station is not visible */
+        assertEquals(1, stations.get(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS).size());
+        assertEquals("Bastille", station.get(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS).getName());
+        Log.i(TAG, "Reads completed in " + (SystemClock.elapsedRealtime() - startTime)
+                + " ms during a write transaction");
+    }
+
+    @Test
+    public void executeRead_deliversResultWhileWriteTransactionIsOpen() throws Exception {
+        holdWriteTransaction();
+
+        final CountDownLatch readDone = new CountDownLatch(1);
+        final AtomicReference<ArrayList<Station>> result = new AtomicReference<>();
+        DatabaseExecutor.getInstance(mContext).executeRead(new Callable<ArrayList<Station>>() {
+            @Override
+            public ArrayList<Station> call() {
+                return mStationsDataSource.getStations();
+            }
+        }, new DatabaseExecutor.Callback<ArrayList<Station>>() {
+            @Override
+            public void onResult(ArrayList<Station> stations) {
+                result.set(stations);
+                readDone.countDown();
+            }
+        });
+
+        assertTrue(readDone.await(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, result.get().size());
+    }
+
+    /* Inserts a station in a transaction kept open until the end of the test, then rolled back */
+    private void holdWriteTransaction() throws InterruptedException {
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = DatabaseHelper.getInstance(mContext).getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    ContentValues values = new ContentValues();
+                    values.put(DatabaseHelper.STATIONS_COLUMN_ID, "a2");
+                    values.put(DatabaseHelper.STATIONS_COLUMN_NAME, "Nation");
+                    values.put(DatabaseHelper.STATIONS_COLUMN_LAST_UPDATE, 1652520391000L);
+                    values.put(DatabaseHelper.STATIONS_COLUMN_LATITUDE, 48.85);
+                    values.put(DatabaseHelper.STATIONS_COLUMN_LONGITUDE, 2.39);
+                    values.put(DatabaseHelper.STATIONS_COLUMN_FREE_BIKES, 3);
+                    values.put(DatabaseHelper.STATIONS_COLUMN_EMPTY_SLOTS, 7);
+                    values.put(DatabaseHelper.STATIONS_COLUMN_NETWORK, NETWORK);
+                    db.insert(DatabaseHelper.STATIONS_TABLE_NAME, null, values);
+                    mWriteStarted.countDown();
+                    mWriteReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        });
+        mWriter.start();
+        assertTrue(mWriteStarted.await(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private static void clearStations(Context context) {
+        SQLiteDatabase db = DatabaseHelper.getInstance(context).getWritableDatabase();
+        db.delete(DatabaseHelper.STATIONS_TABLE_NAME, null, null);
+        db.delete(DatabaseHelper.STATIONS_SEARCH_TABLE_NAME, null, null);
+    }
+}
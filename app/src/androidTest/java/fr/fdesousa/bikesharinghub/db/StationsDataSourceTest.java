@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.db;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import fr.fdesousa.bikesharinghub.models.BikeNetworkInfo;
+import fr.fdesousa.bikesharinghub.models.BikeNetworkLocation;
+import fr.fdesousa.bikesharinghub.models.Station;
+import fr.fdesousa.bikesharinghub.models.StationStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Delta store of the stations: only new, modified and vanished stations are written, along
+ * with their search entries. Runs against the database of the debug application, whose saved
+ * networks are restored afterwards.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StationsDataSourceTest {
+    private static final String TAG = StationsDataSourceTest.class.getSimpleName();
+    private static final String NETWORK_A = "test-network-a";
+    private static final String NETWORK_B = "test-network-b";
+
+    private StationsDataSource mStationsDataSource;
+    private NetworksDataSource mNetworksDataSource;
+    private ArrayList<BikeNetworkInfo> mSavedNetworks;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mStationsDataSource = new StationsDataSource(context);
+        mNetworksDataSource = new NetworksDataSource(context);
+        mSavedNetworks = mNetworksDataSource.getNetworkInfoList();
+        clearStations(context);
+        ArrayList<BikeNetworkInfo> networks = new ArrayList<>();
+        networks.add(newNetwork(NETWORK_A));
+        networks.add(newNetwork(NETWORK_B));
+        mNetworksDataSource.storeNetworks(networks);
+    }
+
+    @After
+    public void tearDown() {
+        clearStations(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        mNetworksDataSource.storeNetworks(mSavedNetworks);
+    }
+
+    @Test
+    public void storeStations_insertsNewStations() {
+        StationsChangeSet changeSet = mStationsDataSource.storeStations(
+                stations(newStation("a1", "Bastille", NETWORK_A), newStation("a2", "Nation", NETWORK_A)),
+                Collections.singletonList(NETWORK_A));
+
+        assertEquals(Arrays.asList("a1", "a2"), changeSet.getInsertedIds());
+        assertEquals(2, mStationsDataSource.getStations().size());
+        assertEquals(1, mStationsDataSource.searchStations("bast", 10).size());
+    }
+
+    @Test
+    public void storeStations_skipsUnchangedStations() {
+        ArrayList<Station> stations = stations(newStation("a1", "Bastille", NETWORK_A));
+        mStationsDataSource.storeStations(stations, Collections.singletonList(NETWORK_A));
+
+        StationsChangeSet changeSet = mStationsDataSource.storeStations(stations(
+                newStation("a1", "Bastille", NETWORK_A)), Collections.singletonList(NETWORK_A));
+
+        assertTrue(changeSet.isEmpty());
+        assertEquals(1, changeSet.getUnchangedCount());
+    }
+
+    @Test
+    public void storeStations_updatesModifiedStations() {
+        mStationsDataSource.storeStations(stations(newStation("a1", "Bastille", NETWORK_A),
+                newStation("a2", "Nation", NETWORK_A)), Collections.singletonList(NETWORK_A));
+
+        /* Same counts and last update, only the status changed */
+        Station closed = newStation("a2", "Nation", NETWORK_A);
+        closed.setStatus(StationStatus.CLOSED);
+        StationsChangeSet changeSet = mStationsDataSource.storeStations(stations(
+                newStation("a1", "Bastille", NETWORK_A, 7), closed), Collections.singletonList(NETWORK_A));
+
+        assertEquals(Arrays.asList("a1", "a2"), changeSet.getUpdatedIds());
+        assertEquals(7, mStationsDataSource.getStation("a1").getFreeBikes());
+        assertEquals(StationStatus.CLOSED, mStationsDataSource.getStation("a2").getStatus());
+    }
+
+    @Test
+    public void storeStations_rewritesSearchOfRenamedStations() {
+        mStationsDataSource.storeStations(stations(newStation("a1", "Bastille", NETWORK_A)),
+                Collections.singletonList(NETWORK_A));
+
+        StationsChangeSet changeSet = mStationsDataSource.storeStations(stations(
+                newStation("a1", "Republique", NETWORK_A)), Collections.singletonList(NETWORK_A));
+
+        assertEquals(Collections.singletonList("a1"), changeSet.getUpdatedIds());
+        assertTrue(mStationsDataSource.searchStations("bast", 10).isEmpty());
+        assertEquals(1, mStationsDataSource.searchStations("repu", 10).size());
+    }
+
+    @Test
+    public void storeStations_deletesVanishedStations() {
+        mStationsDataSource.storeStations(stations(newStation("a1", "Bastille", NETWORK_A),
+                newStation("a2", "Nation", NETWORK_A)), Collections.singletonList(NETWORK_A));
+
+        StationsChangeSet changeSet = mStationsDataSource.storeStations(stations(
+                newStation("a1", "Bastille", NETWORK_A)), Collections.singletonList(NETWORK_A));
+
+        assertEquals(Collections.singletonList("a2"), changeSet.getDeletedIds());
+        assertNull(mStationsDataSource.getStation("a2"));
+        assertTrue(mStationsDataSource.searchStations("nation", 10).isEmpty());
+    }
+
+    @Test
+    public void storeStations_keepsStationsOfOtherNetworks() {
+        mStationsDataSource.storeStations(stations(newStation("a1", "Bastille", NETWORK_A)),
+                Collections.singletonList(NETWORK_A));
+
+        StationsChangeSet changeSet = mStationsDataSource.storeStations(stations(
+                newStation("b1", "Nation", NETWORK_B)), Collections.singletonList(NETWORK_B));
+
+        assertTrue(changeSet.getDeletedIds().isEmpty());
+        assertNotNull(mStationsDataSource.getStation("a1"));
+        assertEquals(2, mStationsDataSource.getStations().size());
+    }
+
+    @Test
+    public void storeStations_replacesStationMovedToAnotherNetwork() {
+        mStationsDataSource.storeStations(stations(newStation("s1", "Bastille", NETWORK_A)),
+                Collections.singletonList(NETWORK_A));
+
+        mStationsDataSource.storeStations(stations(newStation("s1", "Bastille", NETWORK_B)),
+                Collections.singletonList(NETWORK_B));
+
+        List<Station> found = mStationsDataSource.searchStations("bast", 10);
+        assertEquals(1, found.size());
+        assertEquals(NETWORK_B, found.get(0).getNetworkId());
+    }
+
+    /* Timings of a first store and of a refresh modifying a tenth of the stations */
+    @Test
+    public void storeStations_timings() {
+        for (int count : new int[] { 1000, 10000, 50000 }) {
+            clearStations(InstrumentationRegistry.getInstrumentation().getTargetContext());
+            ArrayList<Station> stations = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                stations.add(newStation("s" + i, "Station " + i, NETWORK_A));
+            }
+            long startTime = SystemClock.elapsedRealtime();
+            mStationsDataSource.storeStations(stations, Collections.singletonList(NETWORK_A));
+            long insertTime = SystemClock.elapsedRealtime() - startTime;
+
+            ArrayList<Station> refreshed = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                refreshed.add(newStation("s" + i, "Station " + i, NETWORK_A, i % 10 == 0 ? 9 : 5));
+            }
+            startTime = SystemClock.elapsedRealtime();
+            StationsChangeSet changeSet = mStationsDataSource.storeStations(refreshed,
+                    Collections.singletonList(NETWORK_A));
+            long deltaTime = SystemClock.elapsedRealtime() - startTime;
+
+            assertEquals(count / 10, changeSet.getUpdatedIds().size());
+            Log.i(TAG, count + " stations: stored in " + insertTime + " ms, "
+                    + "refreshed in " + deltaTime + " ms");
+        }
+    }
+
+    private static void clearStations(Context context) {
+        SQLiteDatabase db = DatabaseHelper.getInstance(context).getWritableDatabase();
+        db.delete(DatabaseHelper.STATIONS_TABLE_NAME, null, null);
+        db.delete(DatabaseHelper.STATIONS_SEARCH_TABLE_NAME, null, null);
+    }
+
+    private static ArrayList<Station> stations(Station... stations) {
+        return new ArrayList<>(Arrays.asList(stations));
+    }
+
+    private static Station newStation(String id, String name, String networkId) {
+        return newStation(id, name, networkId, 5);
+    }
+
+    private static Station newStation(String id, String name, String networkId, int freeBikes) {
+        return new Station(id, name, 1652520391000L, 48.85, 2.36, freeBikes, 10, networkId);
+    }
+
+    private static BikeNetworkInfo newNetwork(String id) {
+        return new BikeNetworkInfo(id, id, "", new BikeNetworkLocation(48.85, 2.35, "Paris", "FR"));
+    }
+}
@@ -41,11 +41,12 @@ import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.text.Normalizer;
 import java.util.ArrayList;
@@ -53,9 +54,11 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 
-import fr.fdesousa.bikesharinghub.db.NetworksDataSource;
+import fr.fdesousa.bikesharinghub.db.AsyncNetworksDataSource;
+import fr.fdesousa.bikesharinghub.db.DatabaseExecutor;
 import fr.fdesousa.bikesharinghub.models.BikeNetworkInfo;
 import fr.fdesousa.bikesharinghub.parsers.BikeNetworksListParser;
+import fr.fdesousa.bikesharinghub.tasks.HttpCompression;
 
 import fr.fdesousa.bikesharinghub.R;
 import fr.fdesousa.bikesharinghub.adapters.BikeNetworksListAdapter;
@@ -74,10 +77,11 @@ public class BikeNetworksListActivity extends Activity {
 
     private ListView listView;
     private HashMap<String, BikeNetworkInfo> BikeNetworksHashMap;
+    private ArrayList<BikeNetworkInfo> savedNetworks;
     private ArrayList<String> savedNetworksList;
     private ArrayList<String> cannotFetchNetworksList;
     private BikeNetworksListAdapter bikeNetworksListAdapter;
-    private NetworksDataSource networksDataSource;
+    private AsyncNetworksDataSource networksDataSource;
 
 
     @Override
@@ -101,15 +105,16 @@ public class BikeNetworksListActivity extends Activity {
 
         BikeNetworksHashMap = new HashMap<String, BikeNetworkInfo>();
         cannotFetchNetworksList = new ArrayList<String>();
-        networksDataSource = new NetworksDataSource(this);
-        savedNetworksList = networksDataSource.getNetworksId();
+        savedNetworks = new ArrayList<BikeNetworkInfo>();
+        savedNetworksList = new ArrayList<String>();
+        networksDataSource = new AsyncNetworksDataSource(this);
 
         listView = (ListView) findViewById(R.id.networksListView);
         listView.setChoiceMode(ListView.CHOICE_MODE_MULTIPLE);
         listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> parent, View view,
-                                    int position, long id) {
+                                    final int position, long id) {
                 if(listView.getCheckedItemCount() == 0) {
                     // Do not allow to uncheck all items, so now force this one
                     listView.setItemChecked(position, true);
@@ -133,20 +138,61 @@ public class BikeNetworksListActivity extends Activity {
                     networksToKeepList.remove(selectedNetwork);
                 }
 
-                if (getParent() == null) {
-                    setResult(Activity.RESULT_OK);
-                } else {
-                    getParent().setResult(Activity.RESULT_OK);
+                /* Stations are refreshed from the new networks once they are stored */
+                listView.setEnabled(false);
+                networksDataSource.storeNetworks(networksToKeepList, new DatabaseExecutor.Callback<Void>() {
+                    @Override
+                    public void onResult(Void result) {
+                        if (getParent() == null) {
+                            setResult(Activity.RESULT_OK);
+                        } else {
+                            getParent().setResult(Activity.RESULT_OK);
+                        }
+                        finish();
+                    }
+
+                    /* The saved networks are unchanged, so is the list */
+                    @Override
+                    public void onError(Exception e) {
+                        if (isFinishing()) {
+                            return;
+                        }
+                        listView.setItemChecked(position, !listView.isItemChecked(position));
+                        listView.setEnabled(true);
+                        Toast.makeText(BikeNetworksListActivity.this, R.string.networks_store_error,
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        });
+
+        /* Saved networks are known before the list is displayed */
+        networksDataSource.getNetworkInfoList(new DatabaseExecutor.Callback<ArrayList<BikeNetworkInfo>>() {
+            @Override
+            public void onResult(ArrayList<BikeNetworkInfo> networkInfoList) {
+                if (isFinishing()) {
+                    return;
+                }
+                savedNetworks = networkInfoList;
+                for (BikeNetworkInfo network : savedNetworks) {
+                    savedNetworksList.add(network.getId());
+                }
+                downloadNetworksList();
+            }
+
+            /* The list is still displayed, without the saved networks checked */
+            @Override
+            public void onError(Exception e) {
+                if (!isFinishing()) {
+                    downloadNetworksList();
                 }
-                networksDataSource.storeNetworks(networksToKeepList);
-                finish();
             }
         });
+    }
 
-        String default_apiUrl = getResources().getString(R.string.pref_default_api_url);
-        String apiUrl = PreferenceManager
-                .getDefaultSharedPreferences(this)
-                .getString(PREF_KEY_API_URL, default_apiUrl) + "networks";
+    private void downloadNetworksList() {
+        String apiUrl = PreferenceManager.getDefaultSharedPreferences(this)
+                .getString(PREF_KEY_API_URL, getString(R.string.pref_default_api_url)) + "networks";
         new JSONDownloadTask().execute(apiUrl);
     }
 
@@ -204,6 +250,7 @@ public class BikeNetworksListActivity extends Activity {
                 R.layout.bike_network_item,
                 R.id.network_title,
                 filteredBikeNetworks,
+                savedNetworksList,
                 cannotFetchNetworksList);
         listView.setAdapter(bikeNetworksListAdapter);
     }
@@ -229,13 +276,19 @@ public class BikeNetworksListActivity extends Activity {
 
                 URL url = new URL(urls[0]);
                 HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+                HttpCompression.requestCompression(conn);
                 if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                    BufferedReader input = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                    String strLine;
-                    while ((strLine = input.readLine()) != null) {
-                        response.append(strLine);
+                    Reader input = new InputStreamReader(HttpCompression.getInputStream(conn),
+                            Charset.forName("UTF-8"));
+                    try {
+                        char[] buffer = new char[8192];
+                        int count;
+                        while ((count = input.read(buffer)) != -1) {
+                            response.append(buffer, 0, count);
+                        }
+                    } finally {
+                        input.close();
                     }
-                    input.close();
                 }
                 return response.toString();
             } catch  (javax.net.ssl.SSLHandshakeException e) {
@@ -268,10 +321,10 @@ public class BikeNetworksListActivity extends Activity {
              /* Take into accounts saved networks: if they are missing
               * in the fetch data, add them at the queue.
               */
-            for (String network : savedNetworksList) {
-                if (!BikeNetworksHashMap.containsKey(network)) {
-                    cannotFetchNetworksList.add(network);
-                    BikeNetworksHashMap.put(network, networksDataSource.getNetworkInfoFromId(network));
+            for (BikeNetworkInfo network : savedNetworks) {
+                if (!BikeNetworksHashMap.containsKey(network.getId())) {
+                    cannotFetchNetworksList.add(network.getId());
+                    BikeNetworksHashMap.put(network.getId(), network);
                 }
             }
             RefreshAdapter(null);
@@ -35,9 +35,7 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.RectF;
 import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.location.Location;
 import android.location.LocationManager;
@@ -67,7 +65,6 @@ import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
 import org.osmdroid.api.IMapController;
-import org.osmdroid.bonuspack.clustering.RadiusMarkerClusterer;
 import org.osmdroid.config.Configuration;
 import org.osmdroid.events.MapEventsReceiver;
 import org.osmdroid.tileprovider.cachemanager.CacheManager;
@@ -76,35 +73,37 @@ import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
 import org.osmdroid.tileprovider.tilesource.TileSourcePolicyException;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.util.LocationUtils;
+import org.osmdroid.util.TileSystem;
 import org.osmdroid.views.CustomZoomButtonsController;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.overlay.CopyrightOverlay;
 import org.osmdroid.views.overlay.MapEventsOverlay;
-import org.osmdroid.views.overlay.Marker;
 import org.osmdroid.views.overlay.gestures.OneFingerZoomOverlay;
 import org.osmdroid.views.overlay.infowindow.InfoWindow;
 import org.osmdroid.views.overlay.mylocation.GpsMyLocationProvider;
 import org.osmdroid.views.overlay.mylocation.MyLocationNewOverlay;
 
 import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
-import java.util.TimeZone;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
-import fr.fdesousa.bikesharinghub.db.NetworksDataSource;
-import fr.fdesousa.bikesharinghub.db.StationsDataSource;
+import fr.fdesousa.bikesharinghub.db.AsyncNetworksDataSource;
+import fr.fdesousa.bikesharinghub.db.AsyncStationsDataSource;
+import fr.fdesousa.bikesharinghub.db.DatabaseExecutor;
+import fr.fdesousa.bikesharinghub.db.StationRepository;
+import fr.fdesousa.bikesharinghub.models.BikeNetworkInfo;
 import fr.fdesousa.bikesharinghub.models.BikeNetworkLocation;
 import fr.fdesousa.bikesharinghub.models.DownloadResult;
 import fr.fdesousa.bikesharinghub.models.Station;
 import fr.fdesousa.bikesharinghub.models.StationStatus;
 import fr.fdesousa.bikesharinghub.R;
-import fr.fdesousa.bikesharinghub.tasks.JSONDownloadRunnable;
+import fr.fdesousa.bikesharinghub.overlays.StationIconCache;
+import fr.fdesousa.bikesharinghub.overlays.StationsClusterIndex;
+import fr.fdesousa.bikesharinghub.overlays.StationsOverlay;
+import fr.fdesousa.bikesharinghub.tasks.RefreshCoordinator;
 import fr.fdesousa.bikesharinghub.tilesource.CustomTileSource;
 import fr.fdesousa.bikesharinghub.widgets.StationsListAppWidgetProvider;
 
@@ -115,6 +114,7 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
     private static final String MAP_CENTER_LON_KEY = "map-center-lon";
 
     private static final String PREF_KEY_MAP_LAYER = "pref_map_layer";
+    private static final String PREF_KEY_MAP_DENSITY_ZOOM = "pref_map_density_zoom";
     private static final String PREF_KEY_MAP_CACHE_MAX_SIZE = "pref_map_tiles_cache_max_size";
     private static final String PREF_KEY_MAP_CACHE_TRIM_SIZE = "pref_map_tiles_cache_trim_size";
     private static final String PREF_KEY_DB_LAST_UPDATE = "db_last_update";
@@ -123,6 +123,9 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
     private static final String MAP_LAYER_CYCLEMAP = "cyclemap";
     private static final String MAP_LAYER_OSMPUBLICTRANSPORT = "osmpublictransport";
     private static final int tooOldUpdateDelay = 600000; //10 minutes
+    private static final int CLUSTER_RADIUS = 100;
+    private static final int CLUSTER_MIN_ZOOM = 0;
+    private static final int CLUSTER_MAX_ZOOM = 17;
 
     private static final String[] REQUEST_LOC_LIST = {
         Manifest.permission.ACCESS_COARSE_LOCATION,
@@ -137,20 +140,24 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
     private MapView map;
     private IMapController mapController;
     private MyLocationNewOverlay myLocationOverlay;
-    private NetworksDataSource networksDataSource;
-    private StationsDataSource stationsDataSource;
+    private AsyncNetworksDataSource asyncNetworksDataSource;
+    private AsyncStationsDataSource asyncStationsDataSource;
     private ScrollView stationDetailsView;
-    private Drawable iconSelected;
-    private Drawable previousDrawable = null;
-    private Marker selectedMarker = null;
+    private StationIconCache iconCache;
+    private Station selectedStation = null;
+    private boolean isSelectedStationFavorite = false;
+    private HashMap<String, String> mNetworkNames = new HashMap<>();
     private boolean isDetailViewOpened = false;
     private ColorStateList defaultTextViewColors;
     private MenuItem favoriteMenuItem;
     private Handler mHandler = new Handler();
     private SharedPreferences settings;
-    private RadiusMarkerClusterer stationsMarkers;
-    private ExecutorService mExecutorService;
-    private Future mDownloadFuture;
+    private StationsOverlay stationsOverlay;
+    private MapSnapshot mSnapshot;
+    /* Latest snapshot prepared, only used from the snapshot thread */
+    private MapSnapshot mLatestSnapshot;
+    private int mSnapshotGeneration = 0;
+    private ExecutorService mSnapshotExecutor = Executors.newSingleThreadExecutor();
     private long mDbLastUpdate;
 
     @Override
@@ -176,6 +183,14 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
         mDbLastUpdate = settings.getLong(PREF_KEY_DB_LAST_UPDATE, -1);
         setDBLastUpdateText();
 
+        /* Receive the results of refreshes started from anywhere in the app */
+        RefreshCoordinator refreshCoordinator = RefreshCoordinator.getInstance(this);
+        refreshCoordinator.subscribe(this);
+        if (refreshCoordinator.isRefreshing()) {
+            mProgressBar.setIndeterminate(true);
+            mProgressBar.setVisibility(View.VISIBLE);
+        }
+
         ActionBar actionBar = getActionBar();
         if(actionBar != null) {
             String actionSource = getIntent().getAction();
@@ -213,9 +228,8 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
         };
         ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.activity_map_layout), mOnApplyWindowInsetsListener);
 
-        stationsDataSource = new StationsDataSource(this);
-        networksDataSource = new NetworksDataSource(this);
-        ArrayList<Station> stations = stationsDataSource.getStations();
+        asyncStationsDataSource = new AsyncStationsDataSource(this);
+        asyncNetworksDataSource = new AsyncNetworksDataSource(this);
 
         final Context context = getApplicationContext();
         long systemCacheMaxBytes = 1024 * 1024 * Long.valueOf(settings.getString(PREF_KEY_MAP_CACHE_MAX_SIZE, "100"));
@@ -224,16 +238,7 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
         Configuration.getInstance().setTileFileSystemCacheTrimBytes(systemCacheTrimBytes);
         Configuration.getInstance().load(context, PreferenceManager.getDefaultSharedPreferences(context));
 
-        Drawable drawable = ContextCompat.getDrawable(context, R.drawable.ic_station_marker);
-        Bitmap finalIcon = Bitmap.createBitmap(drawable.getIntrinsicWidth(),
-                drawable.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(finalIcon);
-        drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-        Paint firstPaint = new Paint();
-        firstPaint.setColor(getResources().getColor(R.color.bike_red));
-        canvas.drawCircle(Marker.ANCHOR_CENTER * finalIcon.getWidth(), Marker.ANCHOR_CENTER * finalIcon.getHeight(), finalIcon.getHeight() / 2f, firstPaint);
-        drawable.draw(canvas);
-        iconSelected = new BitmapDrawable(getResources(), finalIcon);
+        iconCache = new StationIconCache(this);
 
         map = (MapView) findViewById(R.id.mapView);
 
@@ -243,29 +248,21 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
         MapEventsOverlay mapEventsOverlay = new MapEventsOverlay(this, this);
         map.getOverlays().add(0, mapEventsOverlay);
 
-        /* markers list */
-        stationsMarkers = new RadiusMarkerClusterer(this);
+        /* clusters and single stations */
         Bitmap clusterIcon = getBitmapFromVectorDrawable(this, R.drawable.marker_cluster);
-        map.getOverlays().add(stationsMarkers);
-        stationsMarkers.setIcon(clusterIcon);
-        stationsMarkers.setRadius(100);
+        stationsOverlay = new StationsOverlay(map, mSnapshotExecutor, iconCache, clusterIcon,
+                getResources().getColor(R.color.bike_red), getResources().getDisplayMetrics().density);
+        stationsOverlay.setDensityMaxZoom(Integer.valueOf(settings.getString(PREF_KEY_MAP_DENSITY_ZOOM,
+                getString(R.string.pref_default_map_density_zoom_value))));
+        stationsOverlay.setOnStationTapListener(mStationTapListener);
+        map.getOverlays().add(stationsOverlay);
 
         boolean hasExtra = getIntent().hasExtra(KEY_STATION);
-        String stationExtraId = "";
         if(hasExtra) {
             Station stationExtra = (Station) getIntent().getSerializableExtra(KEY_STATION);
-            stationExtraId = stationExtra.getId();
-        }
-
-        for (final Station station : stations) {
-            if(hasExtra && station.getId().equals(stationExtraId)) {
-                selectedMarker = createStationMarker(station);  //Keep ref of this marker
-                stationsMarkers.add(selectedMarker);
-            } else {
-                stationsMarkers.add(createStationMarker(station));
-            }
+            setSelectedStation(stationExtra, -1,
+                    getStationIconId(stationExtra, mDbLastUpdate));
         }
-        map.invalidate();
 
         mCopyrightOverly = new CopyrightOverlay(context);
         map.getOverlays().add(mCopyrightOverly);
@@ -292,6 +289,10 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
                 break;
         }
 
+        /* Stations are displayed once loaded, tiles size must be known to cluster them */
+        StationRepository.getInstance(this).addOnStationsChangedListener(stationsChangedListener);
+        loadMapSnapshot();
+
         GpsMyLocationProvider imlp = new GpsMyLocationProvider(this.getBaseContext());
         imlp.setLocationUpdateMinDistance(1000);
         imlp.setLocationUpdateMinTime(60000);
@@ -325,13 +326,21 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
             if (userLocation != null) {
                 mapController.setZoom(16);
                 mapController.animateTo(new GeoPoint(userLocation));
-            } else if (networksDataSource.getNetworkInfoList().size() != 0) {
-                //Arbitrary use the first location of the list
-                BikeNetworkLocation currentNetworkLocation = networksDataSource.getNetworkInfoList().get(0).getLocation();
-                double bikeNetworkLatitude = currentNetworkLocation.getLatitude();
-                double bikeNetworkLongitude = currentNetworkLocation.getLongitude();
-                mapController.setZoom(13);
-                mapController.setCenter(new GeoPoint(bikeNetworkLatitude, bikeNetworkLongitude));
+            } else {
+                asyncNetworksDataSource.getNetworkInfoList(new DatabaseExecutor.Callback<ArrayList<BikeNetworkInfo>>() {
+                    @Override
+                    public void onResult(ArrayList<BikeNetworkInfo> networkInfoList) {
+                        if (networkInfoList.size() == 0 || isFinishing()) {
+                            return;
+                        }
+                        //Arbitrary use the first location of the list
+                        BikeNetworkLocation currentNetworkLocation = networkInfoList.get(0).getLocation();
+                        double bikeNetworkLatitude = currentNetworkLocation.getLatitude();
+                        double bikeNetworkLongitude = currentNetworkLocation.getLongitude();
+                        mapController.setZoom(13);
+                        mapController.setCenter(new GeoPoint(bikeNetworkLatitude, bikeNetworkLongitude));
+                    }
+                });
             }
         }
 
@@ -392,6 +401,14 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        RefreshCoordinator.getInstance(this).unsubscribe(this);
+        StationRepository.getInstance(this).removeOnStationsChangedListener(stationsChangedListener);
+        mSnapshotExecutor.shutdownNow();
+        super.onDestroy();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.map, menu);
@@ -399,11 +416,10 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
     }
 
     private boolean triggerActionDirection() {
-        if (selectedMarker == null) {
+        if (selectedStation == null) {
             return false;
         }
-        GeoPoint sPoint = selectedMarker.getPosition();
-        Uri sLocationUri = Uri.parse("geo:" + sPoint.getLatitude() + "," + sPoint.getLongitude());
+        Uri sLocationUri = Uri.parse("geo:" + selectedStation.getLatitude() + "," + selectedStation.getLongitude());
         Intent intent = new Intent(Intent.ACTION_VIEW, sLocationUri);
         PackageManager packageManager = getPackageManager();
         List<ResolveInfo> activities = null;
@@ -420,32 +436,48 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
         return true;
     }
 
+    /* Known once loaded by setSelectedStation(), false until then */
     private boolean isFavorite() {
-        if(selectedMarker == null) return false;
-        Station selectedStation = (Station) selectedMarker.getRelatedObject();
-        return stationsDataSource.isFavoriteStation(selectedStation.getId());
+        if(selectedStation == null) return false;
+        return isSelectedStationFavorite;
+    }
+
+    private void loadFavorite(final String stationId) {
+        asyncStationsDataSource.isFavoriteStation(stationId, new DatabaseExecutor.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean favorite) {
+                if (selectedStation != null && selectedStation.getId().equals(stationId)) {
+                    isSelectedStationFavorite = favorite;
+                    invalidateOptionsMenu();
+                }
+            }
+        });
     }
 
     private void setFavorite(boolean favorite) {
-        Station selectedStation = (Station) selectedMarker.getRelatedObject();
+        /* Refresh widget with new favorite, once stored */
+        DatabaseExecutor.Callback<Void> refreshWidget = new DatabaseExecutor.Callback<Void>() {
+            @Override
+            public void onResult(Void result) {
+                Intent refreshWidgetIntent = new Intent(getApplicationContext(),
+                        StationsListAppWidgetProvider.class);
+                refreshWidgetIntent.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
+                refreshWidgetIntent.putExtra(StationsListAppWidgetProvider.EXTRA_REFRESH_LIST_ONLY, true);
+                sendBroadcast(refreshWidgetIntent);
+            }
+        };
+        isSelectedStationFavorite = favorite;
         if (favorite) {
-            stationsDataSource.addFavoriteStation(selectedStation.getId());
+            asyncStationsDataSource.addFavoriteStation(selectedStation.getId(), refreshWidget);
             favoriteMenuItem.setIcon(R.drawable.ic_menu_favorite);
             Toast.makeText(MapActivity.this,
                     getString(R.string.station_added_to_favorites), Toast.LENGTH_SHORT).show();
         } else {
-            stationsDataSource.removeFavoriteStation(selectedStation.getId());
+            asyncStationsDataSource.removeFavoriteStation(selectedStation.getId(), refreshWidget);
             favoriteMenuItem.setIcon(R.drawable.ic_menu_favorite_outline);
             Toast.makeText(MapActivity.this,
                     getString(R.string.stations_removed_from_favorites), Toast.LENGTH_SHORT).show();
         }
-
-        /* Refresh widget with new favorite */
-        Intent refreshWidgetIntent = new Intent(getApplicationContext(),
-                StationsListAppWidgetProvider.class);
-        refreshWidgetIntent.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
-        refreshWidgetIntent.putExtra(StationsListAppWidgetProvider.EXTRA_REFRESH_LIST_ONLY, true);
-        sendBroadcast(refreshWidgetIntent);
     }
 
     @Override
@@ -498,18 +530,21 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
     @Override
     public boolean singleTapConfirmedHelper(GeoPoint geoPoint) {
         InfoWindow.closeAllInfoWindowsOn(map);
+        hideStationDetails();
+        return true;
+    }
+
+    private void hideStationDetails() {
         if (isDetailViewOpened) {
             stationDetailsView.setVisibility(View.GONE);
             isDetailViewOpened = false;
             mOnApplyWindowInsetsListener.onApplyWindowInsets(findViewById(R.id.activity_map_layout), mWindowInsets);
             mHandler.removeCallbacksAndMessages(null);
-            if (previousDrawable != null && selectedMarker != null) {
-                selectedMarker.setIcon(previousDrawable);
-                selectedMarker = null;
-            }
+            selectedStation = null;
+            stationsOverlay.clearSelectedStation();
+            map.invalidate();
             invalidateOptionsMenu();
         }
-        return true;
     }
 
     @Override
@@ -548,113 +583,162 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
         }
     }
 
-    private Marker createStationMarker(Station station) {
-        GeoPoint stationLocation = new GeoPoint((int) (station.getLatitude() * 1000000),
-                (int) (station.getLongitude() * 1000000));
-        Marker marker = new Marker(map);
-        marker.setRelatedObject(station);
-        marker.setPosition(stationLocation);
-        marker.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_CENTER);
-        marker.setOnMarkerClickListener(new Marker.OnMarkerClickListener() {
+    private final StationsOverlay.OnStationTapListener mStationTapListener = new StationsOverlay.OnStationTapListener() {
+
+        @Override
+        public boolean onStationTap(int stationIndex) {
+            Station station = mSnapshot.stations.get(stationIndex);
+            setSelectedStation(station, stationIndex, mSnapshot.iconIds[stationIndex]);
+            displayStationsDetails();
+            return true;
+        }
+
+        @Override
+        public boolean onSelectedStationTap() {
+            if(isDetailViewOpened) {
+                //Need to hide details, proceed to singleTapConfirmedHelper
+                return false;
+            }
+            displayStationsDetails();
+            return true;
+        }
+    };
+
+    /* Stations displayed on the map, along with their icons and clusters */
+    private static class MapSnapshot {
+        final List<Station> stations;
+        final HashMap<String, Integer> indexById;
+        final int[] iconIds;
+        final int[] freeBikes;
+        final int[] emptySlots;
+        final StationsClusterIndex clusterIndex;
+        final long dbLastUpdate;
+
+        MapSnapshot(List<Station> stations, int[] iconIds, StationsClusterIndex clusterIndex,
+                    long dbLastUpdate) {
+            this.stations = stations;
+            this.iconIds = iconIds;
+            this.clusterIndex = clusterIndex;
+            this.dbLastUpdate = dbLastUpdate;
+            freeBikes = new int[stations.size()];
+            emptySlots = new int[stations.size()];
+            indexById = new HashMap<>(stations.size() * 2);
+            for (int i = 0; i < stations.size(); i++) {
+                Station station = stations.get(i);
+                indexById.put(station.getId(), i);
+                freeBikes[i] = station.getFreeBikes();
+                emptySlots[i] = station.getEmptySlots();
+            }
+        }
+    }
 
+    /*
+     * Prepare a new snapshot of the stations in the background. Only the latest requested
+     * snapshot is displayed, and it replaces the previous one all at once.
+     *
+     * Clusters are only computed again when the stations changed, and icons when either the
+     * stations or the last update of the database changed.
+     */
+    private void loadMapSnapshot() {
+        final int generation = ++mSnapshotGeneration;
+        final long dbLastUpdate = mDbLastUpdate;
+        mSnapshotExecutor.execute(new Runnable() {
             @Override
-            public boolean onMarkerClick(Marker marker, MapView mapView) {
-                if(isDetailViewOpened) {
-                    if(marker.getPosition().equals(selectedMarker.getPosition())) {
-                        //Need to hide details, proceed to singleTapConfirmedHelper
-                        return false;
-                    } else if (previousDrawable != null) {
-                        selectedMarker.setIcon(previousDrawable);
+            public void run() {
+                List<Station> stations = StationRepository.getInstance(MapActivity.this).getStations();
+                MapSnapshot latest = mLatestSnapshot;
+                boolean sameStations = latest != null && latest.stations == stations;
+                final MapSnapshot snapshot;
+                if (sameStations && latest.dbLastUpdate == dbLastUpdate) {
+                    snapshot = latest;
+                } else {
+                    int[] iconIds = new int[stations.size()];
+                    for (int i = 0; i < stations.size(); i++) {
+                        iconIds[i] = getStationIconId(stations.get(i), dbLastUpdate);
+                    }
+                    StationsClusterIndex clusterIndex;
+                    if (sameStations) {
+                        clusterIndex = latest.clusterIndex;
+                    } else {
+                        double[] latitudes = new double[stations.size()];
+                        double[] longitudes = new double[stations.size()];
+                        for (int i = 0; i < stations.size(); i++) {
+                            latitudes[i] = stations.get(i).getLatitude();
+                            longitudes[i] = stations.get(i).getLongitude();
+                        }
+                        clusterIndex = new StationsClusterIndex(latitudes, longitudes,
+                                CLUSTER_MIN_ZOOM, CLUSTER_MAX_ZOOM, CLUSTER_RADIUS, TileSystem.getTileSize());
                     }
+                    snapshot = new MapSnapshot(stations, iconIds, clusterIndex, dbLastUpdate);
                 }
-                selectedMarker = marker;
-                displayStationsDetails();
-                return true;
+                mLatestSnapshot = snapshot;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mSnapshotGeneration && !isFinishing()
+                                && snapshot != mSnapshot) {
+                            setMapSnapshot(snapshot);
+                        }
+                    }
+                });
             }
         });
+    }
 
-        /* Marker icon */
-        int emptySlots = station.getEmptySlots();
-        int freeBikes = station.getFreeBikes();
-
-        String lastUpdateStationISO8601 = station.getLastUpdate();
-        SimpleDateFormat timestampFormatISO8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
-        timestampFormatISO8601.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        long stationLastUpdate = 0;
-        try {
-            stationLastUpdate = timestampFormatISO8601.parse(lastUpdateStationISO8601).getTime();
-        } catch (ParseException e) {
+    /* The map follows each new snapshot of the stations */
+    private final StationRepository.OnStationsChangedListener stationsChangedListener =
+            new StationRepository.OnStationsChangedListener() {
+        @Override
+        public void onStationsChanged(List<Station> stations) {
+            loadMapSnapshot();
         }
-        long stationDelay = mDbLastUpdate - stationLastUpdate;
-
-        Context mContext = this.getApplicationContext();
-        Drawable drawable = ContextCompat.getDrawable(mContext, R.drawable.ic_station_marker);
-        float freeBikesRatio = (float) freeBikes / (float) (freeBikes + emptySlots);
-        float mTextAnchorU = Marker.ANCHOR_CENTER, mTextAnchorV = Marker.ANCHOR_CENTER;
-
-        Bitmap finalIcon = Bitmap.createBitmap(drawable.getIntrinsicWidth(),
-                drawable.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(finalIcon);
-        drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-        Paint firstPaint = new Paint();
+    };
 
-        if(freeBikes == 0 || station.getStatus() == StationStatus.CLOSED) {
-            firstPaint.setColor(Color.WHITE);
-            canvas.drawCircle(mTextAnchorU * finalIcon.getWidth(), mTextAnchorV * finalIcon.getHeight(), finalIcon.getHeight()/2f, firstPaint);
-        } else {
-            float sweepAngle;
-            if(freeBikesRatio < 1.0) {
-                sweepAngle = 360f * freeBikesRatio;
+    /*
+     * The selected station is looked up by id in the new snapshot, its details stay displayed
+     * and are only refreshed if it was modified.
+     */
+    private void setMapSnapshot(MapSnapshot snapshot) {
+        mSnapshot = snapshot;
+        stationsOverlay.setStations(snapshot.clusterIndex, snapshot.iconIds, snapshot.freeBikes, snapshot.emptySlots);
+        if (selectedStation != null) {
+            Integer index = snapshot.indexById.get(selectedStation.getId());
+            if (index == null) {
+                hideStationDetails();
             } else {
-                sweepAngle = 362f; //need to overwrite 1 degre taken for each edge
-            }
-            RectF oval = new RectF(0, 0, finalIcon.getWidth(), finalIcon.getHeight());
-            RectF ovalInt = new RectF(0.1f * finalIcon.getWidth(), 0.1f * finalIcon.getHeight(), finalIcon.getWidth() * 0.9f, finalIcon.getHeight() * 0.9f);
-            firstPaint.setColor(getResources().getColor(R.color.bike_red));
-            //fill in the gauge
-            canvas.drawArc(oval, -88, sweepAngle - 3, true, firstPaint);
-            firstPaint.setColor(Color.BLACK);
-            //inner contour of the gauge
-            canvas.drawArc(ovalInt, -88, sweepAngle - 3, true, firstPaint);
-            if (emptySlots > 0) {
-                //edges of jauge
-                canvas.drawArc(oval, -91, 2, true, firstPaint);
-                canvas.drawArc(oval, -90 + sweepAngle - 2, 3, true, firstPaint);
-                //fill what's left of the gauge
-                firstPaint.setColor(Color.WHITE);
-                canvas.drawArc(oval, -90 + sweepAngle + 1, 360 - sweepAngle - 2, true, firstPaint);
+                Station previous = selectedStation;
+                setSelectedStation(snapshot.stations.get(index), index, snapshot.iconIds[index]);
+                if (isDetailViewOpened && isStationModified(previous, selectedStation)) {
+                    setStationDetails(selectedStation);
+                    invalidateOptionsMenu();
+                }
             }
-            //inside circle
-            firstPaint.setColor(Color.WHITE);
-            canvas.drawCircle(mTextAnchorU * finalIcon.getWidth(), mTextAnchorV * finalIcon.getHeight(), finalIcon.getHeight() / 2.65f, firstPaint);
         }
+        map.invalidate();
+    }
 
-        if ((emptySlots == 0 && freeBikes == 0) || station.getStatus() == StationStatus.CLOSED) {
-            firstPaint.setColor(Color.BLACK);
-            firstPaint.setStrokeWidth(4);
-            canvas.drawLine(0.15f*finalIcon.getWidth(), 0.15f*finalIcon.getHeight(), 0.85f*finalIcon.getWidth(), 0.85f*finalIcon.getHeight(), firstPaint);
-            canvas.drawLine(0.15f*finalIcon.getWidth(), 0.85f*finalIcon.getHeight(), 0.85f*finalIcon.getWidth(), 0.15f*finalIcon.getHeight(), firstPaint);
-        } else {
-            Paint mTextPaint = new Paint();
-            mTextPaint.setColor(Color.BLACK);
-            mTextPaint.setTextSize(15 * getResources().getDisplayMetrics().density);
-            mTextPaint.setFakeBoldText(true);
-            mTextPaint.setTextAlign(Paint.Align.CENTER);
-            mTextPaint.setAntiAlias(true);
-            String text = String.valueOf(freeBikes);
-            int textHeight = (int) (mTextPaint.descent() + mTextPaint.ascent());
-            if(stationDelay > tooOldUpdateDelay) {
-                text = "!";
-            }
-            canvas.drawText(text,
-                    mTextAnchorU * finalIcon.getWidth(),
-                    mTextAnchorV * finalIcon.getHeight() - textHeight / 2,
-                    mTextPaint);
+    private void setSelectedStation(Station station, int stationIndex, int iconId) {
+        if (selectedStation == null || !selectedStation.getId().equals(station.getId())) {
+            isSelectedStationFavorite = false;
+            loadFavorite(station.getId());
         }
-        drawable.draw(canvas);
-        marker.setIcon(new BitmapDrawable(getResources(), finalIcon));
-        return marker;
+        selectedStation = station;
+        stationsOverlay.setSelectedStation(stationIndex, station.getLatitude(), station.getLongitude(), iconId);
+    }
+
+    private static boolean isStationModified(Station previous, Station station) {
+        return previous.getFreeBikes() != station.getFreeBikes()
+                || previous.getEmptySlots() != station.getEmptySlots()
+                || previous.getStatus() != station.getStatus()
+                || previous.getLastUpdate() != station.getLastUpdate();
+    }
+
+    /* Icon of a station in the atlas, shared with the stations in the same state */
+    private int getStationIconId(Station station, long dbLastUpdate) {
+        long stationDelay = dbLastUpdate - station.getLastUpdate();
+
+        return iconCache.getIconId(station.getFreeBikes(), station.getEmptySlots(),
+                station.getStatus() == StationStatus.CLOSED, stationDelay > tooOldUpdateDelay);
     }
 
     private void setStationDetails(Station markerStation) {
@@ -676,9 +760,25 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
                 stationEmptySlots.setText(String.valueOf(emptySlots));
             }
 
-            TextView stationNetwork = (TextView) findViewById(R.id.stationNetwork);
-            String networkName = networksDataSource.getNetworkInfoFromId(markerStation.getNetworkId()).getName();
-            stationNetwork.setText(networkName);
+            final TextView stationNetwork = (TextView) findViewById(R.id.stationNetwork);
+            final String networkId = markerStation.getNetworkId();
+            if (networkId == null) {
+                stationNetwork.setText("");
+            } else if (mNetworkNames.containsKey(networkId)) {
+                stationNetwork.setText(mNetworkNames.get(networkId));
+            } else {
+                stationNetwork.setText("");
+                asyncNetworksDataSource.getNetworkInfoFromId(networkId, new DatabaseExecutor.Callback<BikeNetworkInfo>() {
+                    @Override
+                    public void onResult(BikeNetworkInfo networkInfo) {
+                        String networkName = networkInfo != null ? networkInfo.getName() : "";
+                        mNetworkNames.put(networkId, networkName);
+                        if (selectedStation != null && networkId.equals(selectedStation.getNetworkId())) {
+                            stationNetwork.setText(networkName);
+                        }
+                    }
+                });
+            }
 
             TextView stationAddress = (TextView) findViewById(R.id.stationAddress);
             if (markerStation.getAddress() != null) {
@@ -766,19 +866,14 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
     }
 
     private void executeDownloadTask() {
-        if(mDownloadFuture != null ) {
-            mDownloadFuture.cancel(true);
-        }
         mProgressBar.setIndeterminate(true);
         mProgressBar.setVisibility(View.VISIBLE);
 
-        Runnable jsonRunnable = new JSONDownloadRunnable(getApplicationContext(), this);
-        mExecutorService = Executors.newSingleThreadExecutor();
-        mDownloadFuture = mExecutorService.submit(jsonRunnable);
+        /* Results are received as a subscriber */
+        RefreshCoordinator.getInstance(this).requestRefresh(null);
     }
 
     public void onDownloadResultCallback(String error) {
-        mExecutorService.shutdown();
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
@@ -795,28 +890,18 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
     }
     @Override
     public void onDownloadResultCallback(int progress) {
-        if(progress == 100) {
-            mExecutorService.shutdown();
-        }
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
+                mProgressBar.setVisibility(View.VISIBLE);
                 mProgressBar.setIndeterminate(false);
                 mProgressBar.setProgress(progress);
                 if(progress != 100) {
                     return;
                 }
-                stationDetailsView.setVisibility(View.GONE);
-                mOnApplyWindowInsetsListener.onApplyWindowInsets(findViewById(R.id.activity_map_layout), mWindowInsets);
-                ArrayList<Station> stations = stationsDataSource.getStations();
-                ArrayList<Marker> markerContent = stationsMarkers.getItems();
-                markerContent.clear();
                 mDbLastUpdate = settings.getLong(PREF_KEY_DB_LAST_UPDATE, -1);
-                for (final Station station : stations) {
-                    markerContent.add(createStationMarker(station));
-                }
-                stationsMarkers.invalidate();
-                map.invalidate();
+                /* Only icons of outdated stations may change, new stations come from the listener */
+                loadMapSnapshot();
 
                 setDBLastUpdateText();
                 mProgressBar.setVisibility(View.GONE);
@@ -827,14 +912,11 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
 
     private class LastUpdateRunnable implements Runnable {
 
-        private final String rawLastUpdateISO8601;
-        private SimpleDateFormat timestampFormatISO8601;
+        private final long lastUpdate;
         private TextView stationLastUpdate;
 
-        public LastUpdateRunnable(String lastUpdateText, final Handler handler) {
-            rawLastUpdateISO8601 = lastUpdateText;
-            timestampFormatISO8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
-            timestampFormatISO8601.setTimeZone(TimeZone.getTimeZone("UTC"));
+        public LastUpdateRunnable(long lastUpdate, final Handler handler) {
+            this.lastUpdate = lastUpdate;
             stationLastUpdate = (TextView) findViewById(R.id.stationLastUpdate);
             stationLastUpdate.setTypeface(null, Typeface.ITALIC);
             if(defaultTextViewColors == null) {
@@ -844,49 +926,44 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
         }
 
         public void run() {
-            try {
-                long timeDifferenceInSeconds;
-                long lastUpdate = timestampFormatISO8601.parse(rawLastUpdateISO8601).getTime();
-                long currentDateTime = System.currentTimeMillis();
-                timeDifferenceInSeconds = (currentDateTime - lastUpdate) / 1000;
-
-                if (timeDifferenceInSeconds < 60) {
-                    stationLastUpdate.setText(getResources().getQuantityString(R.plurals.updated_secondes_ago,
-                            (int) timeDifferenceInSeconds, (int) timeDifferenceInSeconds));
-                    mHandler.postDelayed(this, 1000);
-                } else if (timeDifferenceInSeconds >= 60 && timeDifferenceInSeconds < 3600) {
-                    int minutes = (int) timeDifferenceInSeconds / 60;
-                    stationLastUpdate.setText(getResources().getQuantityString(R.plurals.updated_minutes_ago,
-                            minutes, minutes));
-                    mHandler.postDelayed(this, 1000);
-                } else if (timeDifferenceInSeconds >= 3600 && timeDifferenceInSeconds < 86400) {
-                    int hours = (int) timeDifferenceInSeconds / 3600;
-                    stationLastUpdate.setText(getResources().getQuantityString(R.plurals.updated_hours_ago,
-                            hours, hours));
-                    mHandler.postDelayed(this, 60000);
-                } else if (timeDifferenceInSeconds >= 86400) {
-                    int days = (int) timeDifferenceInSeconds / 86400;
-                    stationLastUpdate.setText(getResources().getQuantityString(R.plurals.updated_days_ago,
-                            days, days));
-                }
+            long timeDifferenceInSeconds;
+            long currentDateTime = System.currentTimeMillis();
+            timeDifferenceInSeconds = (currentDateTime - lastUpdate) / 1000;
+
+            if (timeDifferenceInSeconds < 60) {
+                stationLastUpdate.setText(getResources().getQuantityString(R.plurals.updated_secondes_ago,
+                        (int) timeDifferenceInSeconds, (int) timeDifferenceInSeconds));
+                mHandler.postDelayed(this, 1000);
+            } else if (timeDifferenceInSeconds >= 60 && timeDifferenceInSeconds < 3600) {
+                int minutes = (int) timeDifferenceInSeconds / 60;
+                stationLastUpdate.setText(getResources().getQuantityString(R.plurals.updated_minutes_ago,
+                        minutes, minutes));
+                mHandler.postDelayed(this, 1000);
+            } else if (timeDifferenceInSeconds >= 3600 && timeDifferenceInSeconds < 86400) {
+                int hours = (int) timeDifferenceInSeconds / 3600;
+                stationLastUpdate.setText(getResources().getQuantityString(R.plurals.updated_hours_ago,
+                        hours, hours));
+                mHandler.postDelayed(this, 60000);
+            } else if (timeDifferenceInSeconds >= 86400) {
+                int days = (int) timeDifferenceInSeconds / 86400;
+                stationLastUpdate.setText(getResources().getQuantityString(R.plurals.updated_days_ago,
+                        days, days));
+            }
 
-                if (mDbLastUpdate - lastUpdate > tooOldUpdateDelay) {
-                    stationLastUpdate.setTextColor(Color.RED);
-                } else {
-                    stationLastUpdate.setTextColor(defaultTextViewColors.getDefaultColor());
-                }
-            } catch (ParseException e) {
-                e.printStackTrace();
+            if (mDbLastUpdate - lastUpdate > tooOldUpdateDelay) {
+                stationLastUpdate.setTextColor(Color.RED);
+            } else {
+                stationLastUpdate.setTextColor(defaultTextViewColors.getDefaultColor());
             }
         }
     }
 
-    private void setLastUpdateText(String rawLastUpdateISO8601) {
+    private void setLastUpdateText(long lastUpdate) {
         TextView stationLastUpdate = (TextView) findViewById(R.id.stationLastUpdate);
         stationLastUpdate.setTypeface(null, Typeface.ITALIC);
 
         mHandler.removeCallbacksAndMessages(null);
-        final Runnable runnable = new LastUpdateRunnable(rawLastUpdateISO8601, mHandler);
+        final Runnable runnable = new LastUpdateRunnable(lastUpdate, mHandler);
         mHandler.post(runnable);
     }
 
@@ -904,15 +981,13 @@ public class MapActivity extends Activity implements MapEventsReceiver, Activity
     }
 
     private void displayStationsDetails() {
-        previousDrawable = selectedMarker.getIcon();
-        //selectedMarker.setIcon(iconSelected);
-        setStationDetails((Station) selectedMarker.getRelatedObject());
+        setStationDetails(selectedStation);
         stationDetailsView.setVisibility(View.VISIBLE);
         isDetailViewOpened = true;
         if(mWindowInsets != null) {
             mOnApplyWindowInsetsListener.onApplyWindowInsets(findViewById(R.id.activity_map_layout), mWindowInsets);
         }
-        mapController.animateTo(selectedMarker.getPosition());
+        mapController.animateTo(new GeoPoint(selectedStation.getLatitude(), selectedStation.getLongitude()));
         invalidateOptionsMenu();
     }
 
@@ -34,8 +34,10 @@ import android.content.pm.PackageManager;
 import android.database.MatrixCursor;
 import android.graphics.Color;
 import android.location.Location;
+import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.pm.ShortcutInfoCompat;
@@ -64,19 +66,23 @@ import android.widget.Toast;
 
 import java.lang.IndexOutOfBoundsException;
 import java.text.DateFormat;
-import java.text.Normalizer;
 import java.util.Arrays;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import org.osmdroid.util.LocationUtils;
 
+import fr.fdesousa.bikesharinghub.db.AsyncNetworksDataSource;
+import fr.fdesousa.bikesharinghub.db.AsyncStationsDataSource;
+import fr.fdesousa.bikesharinghub.db.DatabaseExecutor;
+import fr.fdesousa.bikesharinghub.db.StationRepository;
 import fr.fdesousa.bikesharinghub.db.StationsDataSource;
-import fr.fdesousa.bikesharinghub.db.NetworksDataSource;
+import fr.fdesousa.bikesharinghub.index.NearbyStations;
+import fr.fdesousa.bikesharinghub.index.StationsSearchIndex;
+import fr.fdesousa.bikesharinghub.index.StationsSpatialIndex;
 import fr.fdesousa.bikesharinghub.models.BikeNetwork;
 import fr.fdesousa.bikesharinghub.models.BikeNetworkInfo;
 import fr.fdesousa.bikesharinghub.models.BikeNetworkLocation;
@@ -87,7 +93,7 @@ import fr.fdesousa.bikesharinghub.R;
 import fr.fdesousa.bikesharinghub.adapters.SearchStationAdapter;
 import fr.fdesousa.bikesharinghub.fragments.StationsListFragment;
 import fr.fdesousa.bikesharinghub.fragments.WelcomeDialogFragment;
-import fr.fdesousa.bikesharinghub.tasks.JSONDownloadRunnable;
+import fr.fdesousa.bikesharinghub.tasks.RefreshCoordinator;
 
 public class StationsListActivity extends FragmentActivity implements ActionBar.TabListener, ActivityCompat.OnRequestPermissionsResultCallback, DownloadResult {
     private static final String TAG = StationsListActivity.class.getSimpleName();
@@ -99,6 +105,12 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
     private static final String PREF_KEY_NETWORK_LONGITUDE = "network-longitude";
     private static final String PREF_KEY_FAV_STATIONS = "fav-stations";
     private static final String PREF_KEY_DEFAULT_TAB = "pref_default_tab";
+    private static final String PREF_KEY_NEARBY_RADIUS = "pref_nearby_radius";
+    private static final long NEARBY_LOCATION_MIN_TIME = 5000;
+    private static final float NEARBY_LOCATION_MIN_DISTANCE = 25; //meters
+    private static final double NEARBY_RERANK_MARGIN = 250; //meters
+    private static final long SEARCH_DELAY = 150;
+    private static final int SEARCH_MAX_RESULTS = 50;
 
     private static final String KEY_BIKE_NETWORK = "bikeNetwork";
     private static final String KEY_STATIONS = "stations";
@@ -115,11 +127,24 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
     public static final int PICK_NETWORK_REQUEST = 1;
 
     private BikeNetwork bikeNetwork;
-    private ArrayList<Station> stations;
+    private List<Station> stations;
     private ArrayList<Station> favStations;
     private ArrayList<Station> nearbyStations;
+    private StationsSpatialIndex stationsIndex;
+    private NearbyStations nearbyTracker;
+    private boolean isListeningLocation = false;
+    private Handler searchHandler = new Handler();
+    private ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+    private volatile int searchGeneration = 0;
+    /* Only accessed from the search executor */
+    private StationsSearchIndex searchIndex;
+    private List<Station> searchStations;
+    private StationRepository stationRepository;
+    /* Only used from the search executor */
     private StationsDataSource stationsDataSource;
-    private NetworksDataSource networksDataSource;
+    private AsyncStationsDataSource asyncStationsDataSource;
+    private AsyncNetworksDataSource asyncNetworksDataSource;
+    private boolean isActivityDestroyed = false;
 
     private SharedPreferences settings;
 
@@ -133,8 +158,6 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
     private StationsListFragment favoriteStationsFragment;
     private StationsListFragment nearbyStationsFragment;
     private String fragTags[] = {null, null, null};
-    private ExecutorService mExecutorService;
-    private Future mDownloadFuture;
     private ProgressBar mProgressBar;
 
     private SwipeRefreshLayout refreshLayout;
@@ -183,6 +206,8 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
                     } else {
                         setNearbyStations();
                     }
+                } else {
+                    stopLocationUpdates();
                 }
             }
 
@@ -201,10 +226,20 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
         mProgressBar.getIndeterminateDrawable().setColorFilter(
                 Color.parseColor("#FF7883"), android.graphics.PorterDuff.Mode.SRC_IN);
 
+        /* Receive the results of refreshes started from anywhere in the app */
+        RefreshCoordinator refreshCoordinator = RefreshCoordinator.getInstance(this);
+        refreshCoordinator.subscribe(this);
+        if (refreshCoordinator.isRefreshing()) {
+            mProgressBar.setIndeterminate(true);
+            mProgressBar.setVisibility(View.VISIBLE);
+        }
+
         stationsDataSource = new StationsDataSource(this);
-        networksDataSource = new NetworksDataSource(this);
-        stations = stationsDataSource.getStations();
-        favStations = stationsDataSource.getFavoriteStations();
+        asyncStationsDataSource = new AsyncStationsDataSource(this);
+        asyncNetworksDataSource = new AsyncNetworksDataSource(this);
+        stationRepository = StationRepository.getInstance(this);
+        stationRepository.addOnStationsChangedListener(stationsChangedListener);
+        favStations = new ArrayList<>();
         nearbyStations = new ArrayList<>();
 
         tabsPagerAdapter = new TabsPagerAdapter(getSupportFragmentManager());
@@ -223,13 +258,24 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
         actionBar.setHomeButtonEnabled(false);
         actionBar.setNavigationMode(ActionBar.NAVIGATION_MODE_TABS);
 
+        /* Lists are filled once the stations are loaded, favorites are loaded by onResume() */
+        stationRepository.getStations(new DatabaseExecutor.Callback<List<Station>>() {
+            @Override
+            public void onResult(List<Station> newStations) {
+                if (isActivityDestroyed || stations != null) {
+                    return;
+                }
+                setStations(newStations);
+                getPagerAdapter().updateAllStationsListFragment(stations);
+                if (isListeningLocation) {
+                    setNearbyStations();
+                }
+            }
+        });
+
         if(settings.contains(PREF_KEY_NETWORK_ID)) {
             upgradeAppSinceVersion25();
         }
-        boolean firstRun = false;
-        try {
-            firstRun = networksDataSource.getNetworksId().size() == 0;
-        } catch (IndexOutOfBoundsException e) {}
         setDBLastUpdateText();
         ShortcutManagerCompat.removeAllDynamicShortcuts(this);
         if (ShortcutManagerCompat.getDynamicShortcuts(this).isEmpty()) {
@@ -243,12 +289,23 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
             ShortcutManagerCompat.pushDynamicShortcut(this, shortcut);
         }
 
-        if (firstRun) {
-            FragmentManager fm = getSupportFragmentManager();
-            WelcomeDialogFragment.getInstance().show(fm, "fragment_welcome");
-        } else {
-            executeDownloadTask();
-        }
+        /* Read after the networks migration, if any, as database operations run in order */
+        asyncNetworksDataSource.getNetworksId(new DatabaseExecutor.Callback<ArrayList<String>>() {
+            @Override
+            public void onResult(ArrayList<String> networksId) {
+                if (isActivityDestroyed) {
+                    return;
+                }
+                if (networksId.isEmpty()) {
+                    FragmentManager fm = getSupportFragmentManager();
+                    if (!fm.isStateSaved()) {
+                        WelcomeDialogFragment.getInstance().show(fm, "fragment_welcome");
+                    }
+                } else {
+                    executeDownloadTask();
+                }
+            }
+        });
     }
 
     @Override
@@ -274,12 +331,14 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
         long dbLastUpdate = settings.getLong(PREF_KEY_DB_LAST_UPDATE, -1);
         long currentTime = System.currentTimeMillis();
 
-        /* Refresh list with latest data from database */
-        stations = stationsDataSource.getStations();
-        favStations = stationsDataSource.getFavoriteStations();
-        tabsPagerAdapter.updateAllStationsListFragment(stations);
-        tabsPagerAdapter.updateFavoriteStationsFragment(favStations);
+        /* Stations follow the repository, favorites may have been changed from the map */
+        loadFavoriteStations();
         setDBLastUpdateText();
+        if (getPagerAdapter().getItem(viewPager.getCurrentItem()).equals(nearbyStationsFragment)
+                && ContextCompat.checkSelfPermission(this,
+                        Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
+            setNearbyStations();
+        }
 
         /* Update automatically if data is more than 10 min old */
         if ((dbLastUpdate != -1) && ((currentTime - dbLastUpdate) > 600000)) {
@@ -287,6 +346,22 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
         }
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        stopLocationUpdates();
+    }
+
+    @Override
+    protected void onDestroy() {
+        isActivityDestroyed = true;
+        RefreshCoordinator.getInstance(this).unsubscribe(this);
+        stationRepository.removeOnStationsChangedListener(stationsChangedListener);
+        searchHandler.removeCallbacksAndMessages(null);
+        searchExecutor.shutdownNow();
+        super.onDestroy();
+    }
+
     private void setDBLastUpdateText() {
         TextView lastUpdate = (TextView) findViewById(R.id.dbLastUpdate);
         long dbLastUpdate = settings.getLong(PREF_KEY_DB_LAST_UPDATE, -1);
@@ -319,7 +394,7 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
 
             @Override
             public boolean onQueryTextChange(String s) {
-                loadData(s);
+                searchStations(s);
                 return true;
             }
         });
@@ -353,7 +428,8 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
             Log.d(TAG, "PICK_NETWORK_REQUEST");
             if (resultCode == RESULT_OK) {
                 Log.d(TAG, "RESULT_OK");
-                executeDownloadTask();
+                /* A refresh in flight would miss the networks just picked */
+                executeDownloadTask(true);
             }
         }
     }
@@ -373,36 +449,64 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
 
     }
 
-    private String normalize(String str) {
-        return Normalizer.normalize(str, Normalizer.Form.NFD)
-            .replaceAll("\\p{InCombiningDiacriticalMarks}+|\\s|'|-|_", "").toLowerCase();
+    /* Debounce the typing, then search in the background */
+    private void searchStations(final String query) {
+        searchHandler.removeCallbacksAndMessages(null);
+        final int generation = ++searchGeneration;
+        searchHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                searchExecutor.execute(new SearchRunnable(query, generation));
+            }
+        }, SEARCH_DELAY);
     }
 
-    private void loadData(String query) {
-        ArrayList<Station> queryStations = new ArrayList<>();
-        String[] columns = new String[]{"_id", "text"};
-        Object[] temp = new Object[]{0, "default"};
-
-        MatrixCursor cursor = new MatrixCursor(columns);
-
-        if (stations != null) {
-            for (int i = 0; i < stations.size(); i++) {
-                Station station = stations.get(i);
-                if (normalize(station.getName().toLowerCase()).contains(normalize(query.toLowerCase()))) {
-                    temp[0] = i;
-                    temp[1] = station.getName();
-                    cursor.addRow(temp);
-                    queryStations.add(station);
-                }
-            }
+    private class SearchRunnable implements Runnable {
+        private final String query;
+        private final int generation;
+
+        SearchRunnable(String query, int generation) {
+            this.query = query;
+            this.generation = generation;
         }
 
-        searchView.setSuggestionsAdapter(new SearchStationAdapter(this, cursor, queryStations));
+        @Override
+        public void run() {
+            if (generation != searchGeneration) {
+                return;
+            }
 
+            /* Names and addresses by word prefix, then names containing the query or close to it */
+            final ArrayList<Station> queryStations = stationsDataSource.searchStations(query, SEARCH_MAX_RESULTS);
+            if (searchIndex != null && queryStations.size() < SEARCH_MAX_RESULTS) {
+                HashSet<String> foundIds = new HashSet<>();
+                for (Station station : queryStations) {
+                    foundIds.add(station.getId());
+                }
+                for (int index : searchIndex.search(query, SEARCH_MAX_RESULTS)) {
+                    Station station = searchStations.get(index);
+                    if (queryStations.size() < SEARCH_MAX_RESULTS && foundIds.add(station.getId())) {
+                        queryStations.add(station);
+                    }
+                }
+            }
+            final MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "text"});
+            for (int i = 0; i < queryStations.size(); i++) {
+                cursor.addRow(new Object[]{i, queryStations.get(i).getName()});
+            }
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (generation == searchGeneration && searchView != null) {
+                        searchView.setSuggestionsAdapter(new SearchStationAdapter(
+                                StationsListActivity.this, cursor, queryStations));
+                    }
+                }
+            });
+        }
     }
 
     public void onDownloadResultCallback(String error) {
-        mExecutorService.shutdown();
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
@@ -419,20 +523,17 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
 
     }
     public void onDownloadResultCallback(int progress) {
-        if(progress == 100) {
-            mExecutorService.shutdown();
-        }
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
+                mProgressBar.setVisibility(View.VISIBLE);
                 mProgressBar.setIndeterminate(false);
                 mProgressBar.setProgress(progress);
 
                 if(progress != 100) {
                     return;
                 }
-                stations = stationsDataSource.getStations();
-                favStations = stationsDataSource.getFavoriteStations();
+                /* New stations, if any, have already been received from the repository */
                 setDBLastUpdateText();
                 mProgressBar.setVisibility(View.GONE);
 
@@ -446,8 +547,6 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
                     }
                 }
                 if(stations != null) {
-                    getPagerAdapter().updateAllStationsListFragment(stations);
-                    getPagerAdapter().updateFavoriteStationsFragment(favStations);
                     getPagerAdapter().updateNearbyStationsFragment(nearbyStations);
                 }
             }
@@ -456,54 +555,82 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
 
     //put here the code to update the bikes data
     private void executeDownloadTask() {
-        if(mDownloadFuture != null ) {
-            mDownloadFuture.cancel(true);
-        }
+        executeDownloadTask(false);
+    }
+
+    private void executeDownloadTask(boolean restart) {
         refreshLayout.setRefreshing(false);
         mProgressBar.setIndeterminate(true);
         mProgressBar.setVisibility(View.VISIBLE);
 
-        Runnable jsonRunnable = new JSONDownloadRunnable(getApplicationContext(), this);
-        mExecutorService = Executors.newSingleThreadExecutor();
-        mDownloadFuture = mExecutorService.submit(jsonRunnable);
+        /* Results are received as a subscriber */
+        if (restart) {
+            RefreshCoordinator.getInstance(this).restartRefresh(null);
+        } else {
+            RefreshCoordinator.getInstance(this).requestRefresh(null);
+        }
+    }
+
+    /* Lists of the activity follow each new snapshot of the stations */
+    private final StationRepository.OnStationsChangedListener stationsChangedListener =
+            new StationRepository.OnStationsChangedListener() {
+        @Override
+        public void onStationsChanged(List<Station> newStations) {
+            setStations(newStations);
+            getPagerAdapter().updateAllStationsListFragment(stations);
+            loadFavoriteStations();
+        }
+    };
+
+    private void loadFavoriteStations() {
+        asyncStationsDataSource.getFavoriteStations(new DatabaseExecutor.Callback<ArrayList<Station>>() {
+            @Override
+            public void onResult(ArrayList<Station> newFavStations) {
+                if (isActivityDestroyed) {
+                    return;
+                }
+                favStations = newFavStations;
+                getPagerAdapter().updateFavoriteStationsFragment(favStations);
+            }
+        });
+    }
+
+    /* The spatial and search indexes are rebuilt along with the stations list */
+    private void setStations(List<Station> newStations) {
+        stations = newStations;
+        double[] latitudes = new double[stations.size()];
+        double[] longitudes = new double[stations.size()];
+        for (int i = 0; i < stations.size(); i++) {
+            latitudes[i] = stations.get(i).getLatitude();
+            longitudes[i] = stations.get(i).getLongitude();
+        }
+        stationsIndex = new StationsSpatialIndex(latitudes, longitudes);
+
+        final List<Station> indexedStations = stations;
+        searchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<String> names = new ArrayList<>(indexedStations.size());
+                for (Station station : indexedStations) {
+                    names.add(station.getName());
+                }
+                searchIndex = new StationsSearchIndex(names, searchIndex);
+                searchStations = indexedStations;
+            }
+        });
     }
 
+    /* Location updates start anyway, the list is filled once the stations are loaded */
     private void setNearbyStations() {
+        startLocationUpdates();
         if (stations == null) {
             return;
         }
-        final double radius = 0.01;
-        nearbyStations = new ArrayList<>();
         LocationManager locationManager =
                 (LocationManager) this.getSystemService(Context.LOCATION_SERVICE);
         final Location userLocation = LocationUtils.getLastKnownLocation(locationManager);
         if (userLocation != null) {
-            for (Station station : stations) {
-                if ((station.getLatitude() > userLocation.getLatitude() - radius)
-                        && (station.getLatitude() < userLocation.getLatitude() + radius)
-                        && (station.getLongitude() > userLocation.getLongitude() - radius)
-                        && (station.getLongitude() < userLocation.getLongitude() + radius)) {
-                    nearbyStations.add(station);
-                }
-            }
-            Collections.sort(nearbyStations, new Comparator<Station>() {
-
-                @Override
-                public int compare(Station station1, Station station2) {
-                    float[] result1 = new float[3];
-                    Location.distanceBetween(userLocation.getLatitude(), userLocation.getLongitude(),
-                            station1.getLatitude(), station1.getLongitude(), result1);
-                    Float distance1 = result1[0];
-
-                    float[] result2 = new float[3];
-                    Location.distanceBetween(userLocation.getLatitude(), userLocation.getLongitude(),
-                            station2.getLatitude(), station2.getLongitude(), result2);
-                    Float distance2 = result2[0];
-
-                    return distance1.compareTo(distance2);
-                }
-            });
-            getPagerAdapter().updateNearbyStationsFragment(nearbyStations);
+            updateNearbyStations(userLocation, true);
             int locationMinutes = (int) ((System.currentTimeMillis() - userLocation.getTime())/60000);
             if (nearbyStations.size() != 0 && locationMinutes > 10) {
                 Toast.makeText(getApplicationContext(),
@@ -511,11 +638,81 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
                         locationMinutes),Toast.LENGTH_SHORT).show();
             }
         } else {
+            /* The list is filled by the first location update */
             nearbyStationsFragment.setEmptyView(R.string.location_not_found);
-            // TODO: listen for location
         }
     }
 
+    /* Re-rank the nearby stations, the list is only updated if their order changed */
+    private void updateNearbyStations(Location location, boolean force) {
+        double radius = Double.valueOf(settings.getString(PREF_KEY_NEARBY_RADIUS,
+                getString(R.string.pref_default_nearby_radius_value)));
+        if (nearbyTracker == null || nearbyTracker.getIndex() != stationsIndex
+                || nearbyTracker.getRadius() != radius) {
+            nearbyTracker = new NearbyStations(stationsIndex, radius, NEARBY_RERANK_MARGIN);
+            force = true;
+        }
+        if (!nearbyTracker.update(location.getLatitude(), location.getLongitude()) && !force) {
+            return;
+        }
+        StationsSpatialIndex.Neighbours nearby = nearbyTracker.getNearby();
+        nearbyStations = new ArrayList<>(nearby.size());
+        for (int i = 0; i < nearby.size(); i++) {
+            nearbyStations.add(stations.get(nearby.getStationIndex(i)));
+        }
+        getPagerAdapter().updateNearbyStationsFragment(nearbyStations);
+    }
+
+    private final LocationListener nearbyLocationListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(Location location) {
+            if (stations != null) {
+                updateNearbyStations(location, false);
+            }
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+        }
+    };
+
+    private void startLocationUpdates() {
+        if (isListeningLocation) {
+            return;
+        }
+        LocationManager locationManager =
+                (LocationManager) this.getSystemService(Context.LOCATION_SERVICE);
+        try {
+            for (String provider : locationManager.getProviders(true)) {
+                if (!provider.equals(LocationManager.PASSIVE_PROVIDER)) {
+                    locationManager.requestLocationUpdates(provider, NEARBY_LOCATION_MIN_TIME,
+                            NEARBY_LOCATION_MIN_DISTANCE, nearbyLocationListener);
+                }
+            }
+            isListeningLocation = true;
+        } catch (SecurityException e) {
+            Log.e(TAG, "Location updates not allowed: " + e.getMessage());
+        }
+    }
+
+    private void stopLocationUpdates() {
+        if (!isListeningLocation) {
+            return;
+        }
+        LocationManager locationManager =
+                (LocationManager) this.getSystemService(Context.LOCATION_SERVICE);
+        locationManager.removeUpdates(nearbyLocationListener);
+        isListeningLocation = false;
+    }
+
     private TabsPagerAdapter getPagerAdapter() {
         if(tabsPagerAdapter == null) {
             tabsPagerAdapter = new TabsPagerAdapter(getSupportFragmentManager());
@@ -578,21 +775,21 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
             return frag;
         }
 
-        public void updateAllStationsListFragment(ArrayList<Station> stations) {
+        public void updateAllStationsListFragment(List<Station> stations) {
             if(fragTags[2] != null) {
                 StationsListFragment frgt = (StationsListFragment) getSupportFragmentManager().findFragmentByTag(fragTags[2]);
                 frgt.updateStationsList(stations);
             }
         }
 
-        public void updateFavoriteStationsFragment(ArrayList<Station> stations) {
+        public void updateFavoriteStationsFragment(List<Station> stations) {
             if(fragTags[1] != null) {
                 StationsListFragment frgt = (StationsListFragment) getSupportFragmentManager().findFragmentByTag(fragTags[1]);
                 frgt.updateStationsList(stations);
             }
         }
 
-        public void updateNearbyStationsFragment(ArrayList<Station> stations) {
+        public void updateNearbyStationsFragment(List<Station> stations) {
             if(fragTags[0] != null) {
                 StationsListFragment frgt = (StationsListFragment) getSupportFragmentManager().findFragmentByTag(fragTags[0]);
                 frgt.updateStationsList(stations);
@@ -613,7 +810,8 @@ public class StationsListActivity extends FragmentActivity implements ActionBar.
                         PREF_KEY_NETWORK_LONGITUDE, 0));
         BikeNetworkLocation loc = new BikeNetworkLocation(latitude, longitude, city, "");
         BikeNetworkInfo savedNetwork = new BikeNetworkInfo(id, name, "", loc);
-        networksDataSource.storeNetworks(new ArrayList<BikeNetworkInfo>(Arrays.asList(savedNetwork)));
+        asyncNetworksDataSource.storeNetworks(
+                new ArrayList<BikeNetworkInfo>(Arrays.asList(savedNetwork)), null);
 
         //Delete obsolete shared preferences
         settings.edit().remove(PREF_KEY_NETWORK_ID).apply();
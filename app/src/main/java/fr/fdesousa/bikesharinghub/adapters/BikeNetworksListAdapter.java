@@ -33,7 +33,6 @@ import android.widget.TextView;
 
 import java.util.ArrayList;
 
-import fr.fdesousa.bikesharinghub.db.NetworksDataSource;
 import fr.fdesousa.bikesharinghub.models.BikeNetworkInfo;
 
 import fr.fdesousa.bikesharinghub.R;
@@ -47,11 +46,11 @@ public class BikeNetworksListAdapter extends ArrayAdapter<BikeNetworkInfo> {
     private ArrayList<String> cannotFetchNetworksList;
 
     public BikeNetworksListAdapter(Context context, int resource, int textViewResourceId,
-        ArrayList<BikeNetworkInfo> networks, ArrayList<String> cannotFetch) {
+        ArrayList<BikeNetworkInfo> networks, ArrayList<String> savedNetworks,
+        ArrayList<String> cannotFetch) {
         super(context, resource, textViewResourceId, networks);
 
-        NetworksDataSource networksDataSource = new NetworksDataSource(context);
-        savedNetworksList = networksDataSource.getNetworksId();
+        savedNetworksList = savedNetworks;
         cannotFetchNetworksList = cannotFetch;
     }
 
@@ -34,7 +34,8 @@ import android.widget.TextView;
 import java.util.ArrayList;
 import java.util.HashMap;
 
-import fr.fdesousa.bikesharinghub.db.NetworksDataSource;
+import fr.fdesousa.bikesharinghub.db.AsyncNetworksDataSource;
+import fr.fdesousa.bikesharinghub.db.DatabaseExecutor;
 import fr.fdesousa.bikesharinghub.models.Station;
 import fr.fdesousa.bikesharinghub.models.StationStatus;
 
@@ -45,12 +46,19 @@ import fr.fdesousa.bikesharinghub.R;
  */
 public class StationsListAdapter extends ArrayAdapter<Station> {
 
-    private HashMap<String, String> colorMap;
+    private HashMap<String, String> colorMap = new HashMap<>();
 
+    /* Networks colors are applied once loaded */
     public StationsListAdapter(Context context, int resource, ArrayList<Station> stations) {
         super(context, resource, stations);
-        NetworksDataSource networksDataSource = new NetworksDataSource(context);
-        colorMap = networksDataSource.getNetworksColor();
+        AsyncNetworksDataSource networksDataSource = new AsyncNetworksDataSource(context);
+        networksDataSource.getNetworksColor(new DatabaseExecutor.Callback<HashMap<String, String>>() {
+            @Override
+            public void onResult(HashMap<String, String> networksColor) {
+                colorMap = networksColor;
+                notifyDataSetChanged();
+            }
+        });
     }
 
     @Override
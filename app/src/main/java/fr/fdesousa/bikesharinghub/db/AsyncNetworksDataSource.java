@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.db;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+
+import fr.fdesousa.bikesharinghub.models.BikeNetworkInfo;
+
+/**
+ * Operations of NetworksDataSource run on the database executor, for use from the main thread.
+ */
+public class AsyncNetworksDataSource {
+    private final NetworksDataSource mNetworksDataSource;
+    private final DatabaseExecutor mExecutor;
+
+    public AsyncNetworksDataSource(Context context) {
+        mNetworksDataSource = new NetworksDataSource(context);
+        mExecutor = DatabaseExecutor.getInstance(context);
+    }
+
+    /* The callback, which may be null, is called once the networks are stored */
+    public void storeNetworks(final ArrayList<BikeNetworkInfo> bikeNetworks,
+                              DatabaseExecutor.Callback<Void> callback) {
+        mExecutor.executeWrite(new Callable<Void>() {
+            @Override
+            public Void call() {
+                mNetworksDataSource.storeNetworks(bikeNetworks);
+                return null;
+            }
+        }, callback);
+    }
+
+    public void getNetworksId(DatabaseExecutor.Callback<ArrayList<String>> callback) {
+        mExecutor.executeRead(new Callable<ArrayList<String>>() {
+            @Override
+            public ArrayList<String> call() {
+                return mNetworksDataSource.getNetworksId();
+            }
+        }, callback);
+    }
+
+    /* The result is null if the network is not saved */
+    public void getNetworkInfoFromId(final String networkId,
+                                     DatabaseExecutor.Callback<BikeNetworkInfo> callback) {
+        mExecutor.executeRead(new Callable<BikeNetworkInfo>() {
+            @Override
+            public BikeNetworkInfo call() {
+                return mNetworksDataSource.getNetworkInfoFromId(networkId);
+            }
+        }, callback);
+    }
+
+    public void getNetworkInfoList(DatabaseExecutor.Callback<ArrayList<BikeNetworkInfo>> callback) {
+        mExecutor.executeRead(new Callable<ArrayList<BikeNetworkInfo>>() {
+            @Override
+            public ArrayList<BikeNetworkInfo> call() {
+                return mNetworksDataSource.getNetworkInfoList();
+            }
+        }, callback);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void getNetworksColor(DatabaseExecutor.Callback<HashMap<String, String>> callback) {
+        mExecutor.executeRead(new Callable<HashMap<String, String>>() {
+            @Override
+            public HashMap<String, String> call() {
+                return mNetworksDataSource.getNetworksColor();
+            }
+        }, callback);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.db;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+
+import fr.fdesousa.bikesharinghub.models.Station;
+
+/**
+ * Operations of StationsDataSource run on the database executor, for use from the main thread.
+ * The whole stations list is available from StationRepository.
+ */
+public class AsyncStationsDataSource {
+    private final StationsDataSource mStationsDataSource;
+    private final DatabaseExecutor mExecutor;
+
+    public AsyncStationsDataSource(Context context) {
+        mStationsDataSource = new StationsDataSource(context);
+        mExecutor = DatabaseExecutor.getInstance(context);
+    }
+
+    public void getFavoriteStations(DatabaseExecutor.Callback<ArrayList<Station>> callback) {
+        mExecutor.executeRead(new Callable<ArrayList<Station>>() {
+            @Override
+            public ArrayList<Station> call() {
+                return mStationsDataSource.getFavoriteStations();
+            }
+        }, callback);
+    }
+
+    public void isFavoriteStation(final String id, DatabaseExecutor.Callback<Boolean> callback) {
+        mExecutor.executeRead(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mStationsDataSource.isFavoriteStation(id);
+            }
+        }, callback);
+    }
+
+    /* The callback, which may be null, is called once the favorite is stored */
+    public void addFavoriteStation(final String id, DatabaseExecutor.Callback<Void> callback) {
+        mExecutor.executeWrite(new Callable<Void>() {
+            @Override
+            public Void call() {
+                mStationsDataSource.addFavoriteStation(id);
+                return null;
+            }
+        }, callback);
+    }
+
+    public void removeFavoriteStation(final String id, DatabaseExecutor.Callback<Void> callback) {
+        mExecutor.executeWrite(new Callable<Void>() {
+            @Override
+            public Void call() {
+                mStationsDataSource.removeFavoriteStation(id);
+                return null;
+            }
+        }, callback);
+    }
+}
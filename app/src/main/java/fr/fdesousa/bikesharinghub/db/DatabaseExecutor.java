@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.db;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import fr.fdesousa.bikesharinghub.R;
+
+/**
+ * Long-lived threads running the database operations requested by the UI.
+ *
+ * Writes run one at a time on a single thread, in submission order. Reads run concurrently on
+ * a pool of readers, sized by R.integer.database_read_pool_size, and proceed during writes
+ * thanks to write-ahead logging. A read still runs after the writes submitted before it, so
+ * that it sees them: it is only handed to the readers once they completed, no reader waits
+ * for a write. Results and failures are posted back to the main thread.
+ */
+public class DatabaseExecutor {
+    private static final String TAG = DatabaseExecutor.class.getSimpleName();
+
+    private static DatabaseExecutor instance;
+
+    private final ExecutorService mWriteExecutorService = Executors.newSingleThreadExecutor();
+    private final ExecutorService mReadExecutorService;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /* Reads waiting for a write, in submission order */
+    private final ArrayDeque<PendingRead> mPendingReads = new ArrayDeque<>();
+    private long mSubmittedWrites = 0;
+    private long mCompletedWrites = 0;
+
+    public interface Callback<T> {
+        /* Called on the main thread */
+        void onResult(T result);
+
+        /* Called on the main thread instead of onResult() if the operation failed */
+        default void onError(Exception e) {
+        }
+    }
+
+    private static class PendingRead {
+        final long write;
+        final Runnable read;
+
+        PendingRead(long write, Runnable read) {
+            this.write = write;
+            this.read = read;
+        }
+    }
+
+    public static synchronized DatabaseExecutor getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseExecutor(
+                    context.getResources().getInteger(R.integer.database_read_pool_size));
+        }
+        return instance;
+    }
+
+    private DatabaseExecutor(int readPoolSize) {
+        mReadExecutorService = Executors.newFixedThreadPool(readPoolSize);
+    }
+
+    /* The callback may be null */
+    public <T> void executeRead(final Callable<T> operation, final Callback<T> callback) {
+        Runnable read = new Runnable() {
+            @Override
+            public void run() {
+                runOperation(operation, callback);
+            }
+        };
+        synchronized (this) {
+            if (mCompletedWrites < mSubmittedWrites) {
+                mPendingReads.add(new PendingRead(mSubmittedWrites, read));
+                return;
+            }
+        }
+        mReadExecutorService.execute(read);
+    }
+
+    /* The callback may be null */
+    public synchronized <T> void executeWrite(final Callable<T> operation, final Callback<T> callback) {
+        final long write = ++mSubmittedWrites;
+        mWriteExecutorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runOperation(operation, callback);
+                } finally {
+                    onWriteCompleted(write);
+                }
+            }
+        });
+    }
+
+    /* Hand the reads that were waiting for this write to the readers */
+    private void onWriteCompleted(long write) {
+        ArrayList<Runnable> reads = new ArrayList<>();
+        synchronized (this) {
+            mCompletedWrites = write;
+            while (!mPendingReads.isEmpty() && mPendingReads.peek().write <= write) {
+                reads.add(mPendingReads.poll().read);
+            }
+        }
+        for (Runnable read : reads) {
+            mReadExecutorService.execute(read);
+        }
+    }
+
+    private <T> void runOperation(Callable<T> operation, final Callback<T> callback) {
+        final T result;
+        try {
+            result = operation.call();
+        } catch (final Exception e) {
+            Log.e(TAG, "Database operation failed", e);
+            if (callback != null) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(e);
+                    }
+                });
+            }
+            return;
+        }
+        if (callback == null) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onResult(result);
+            }
+        });
+    }
+}
@@ -23,16 +23,22 @@ package fr.fdesousa.bikesharinghub.db;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 import android.preference.PreferenceManager;
 
+import fr.fdesousa.bikesharinghub.index.StationsSearchIndex;
+import fr.fdesousa.bikesharinghub.models.StationStatus;
+
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static DatabaseHelper instance;
     private Context mContext;
 
     private static final String DB_NAME = "openbikesharing.sqlite";
-    private static final int DB_VERSION = 3;
+    private static final int DB_VERSION = 5;
 
     public static final String STATIONS_TABLE_NAME = "stations";
     public static final String STATIONS_COLUMN_ID = "id";
@@ -49,6 +55,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String STATIONS_COLUMN_EBIKES = "ebikes";
     public static final String STATIONS_COLUMN_NETWORK = "network_id";
 
+    /* Full-text index of the stations, its docid is the rowid of the station */
+    public static final String STATIONS_SEARCH_TABLE_NAME = "stations_search";
+    public static final String STATIONS_SEARCH_COLUMN_TEXT = "text";
+
     public static final String FAV_STATIONS_TABLE_NAME = "fav_stations";
     public static final String FAV_STATIONS_COLUMN_ID = "id";
 
@@ -64,7 +74,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     private static final String PREF_KEY_NETWORK_ID = "network-id";
 
-    public static DatabaseHelper getInstance(Context context) {
+    /* Called from the UI, the refresh and the database threads */
+    public static synchronized DatabaseHelper getInstance(Context context) {
         if (instance == null) {
             instance = new DatabaseHelper(context.getApplicationContext());
         }
@@ -76,33 +87,65 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         mContext = context;
     }
 
+    /*
+     * Write-ahead logging lets reads, from the widget or the lists, proceed while a refresh
+     * writes the stations. With it, NORMAL synchronous mode is still safe from corruption, an
+     * interrupted refresh at worst losing its last commits on power loss.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+        db.execSQL("PRAGMA synchronous = NORMAL");
+    }
+
+    /* onConfigure() is only called from API 16 */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
 
-        db.execSQL("CREATE TABLE " + STATIONS_TABLE_NAME + "("
+        createStationsTable(db, STATIONS_TABLE_NAME);
+        db.execSQL("CREATE TABLE " + FAV_STATIONS_TABLE_NAME + "("
+                + FAV_STATIONS_COLUMN_ID + " TEXT PRIMARY KEY)"
+        );
+        createNetworksTable(db, NETWORKS_TABLE_NAME);
+        createStationsSearchTable(db);
+    }
+
+    /*
+     * Coordinates are REAL, last_update is in epoch milliseconds, status is the code of a
+     * StationStatus and booleans are 0 or 1.
+     */
+    private static void createStationsTable(SQLiteDatabase db, String tableName) {
+        db.execSQL("CREATE TABLE " + tableName + "("
                 + STATIONS_COLUMN_ID + " TEXT PRIMARY KEY,"
                 + STATIONS_COLUMN_NAME + " TEXT NOT NULL,"
-                + STATIONS_COLUMN_LAST_UPDATE + " TEXT NOT NULL,"
-                + STATIONS_COLUMN_LATITUDE + " NUMERIC NOT NULL,"
-                + STATIONS_COLUMN_LONGITUDE + " NUMERIC NOT NULL,"
+                + STATIONS_COLUMN_LAST_UPDATE + " INTEGER NOT NULL,"
+                + STATIONS_COLUMN_LATITUDE + " REAL NOT NULL,"
+                + STATIONS_COLUMN_LONGITUDE + " REAL NOT NULL,"
                 + STATIONS_COLUMN_FREE_BIKES + " INTEGER NOT NULL,"
                 + STATIONS_COLUMN_EMPTY_SLOTS + " INTEGER NOT NULL,"
                 + STATIONS_COLUMN_ADDRESS + " TEXT,"
                 + STATIONS_COLUMN_BANKING + " INTEGER,"
                 + STATIONS_COLUMN_BONUS + " INTEGER,"
-                + STATIONS_COLUMN_STATUS + " TEXT,"
+                + STATIONS_COLUMN_STATUS + " INTEGER,"
                 + STATIONS_COLUMN_EBIKES + " INTEGER, \""
                 + STATIONS_COLUMN_NETWORK + "\" TEXT)"
         );
-        db.execSQL("CREATE TABLE " + FAV_STATIONS_TABLE_NAME + "("
-                + FAV_STATIONS_COLUMN_ID + " TEXT PRIMARY KEY)"
-        );
-        db.execSQL("CREATE TABLE " + NETWORKS_TABLE_NAME + "("
+    }
+
+    private static void createNetworksTable(SQLiteDatabase db, String tableName) {
+        db.execSQL("CREATE TABLE " + tableName + "("
                 + NETWORKS_COLUMN_ID + " TEXT PRIMARY KEY,"
                 + NETWORKS_COLUMN_NAME + " TEXT NOT NULL,"
                 + NETWORKS_COLUMN_COMPANY + " TEXT NOT NULL,"
-                + NETWORKS_COLUMN_LATITUDE + " NUMERIC NOT NULL,"
-                + NETWORKS_COLUMN_LONGITUDE + " NUMERIC NOT NULL,"
+                + NETWORKS_COLUMN_LATITUDE + " REAL NOT NULL,"
+                + NETWORKS_COLUMN_LONGITUDE + " REAL NOT NULL,"
                 + NETWORKS_COLUMN_CITY + " TEXT NOT NULL,"
                 + NETWORKS_COLUMN_COUNTRY + " TEXT NOT NULL,"
                 + NETWORKS_COLUMN_COLOR + " TEXT)"
@@ -137,6 +180,122 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     + STATIONS_COLUMN_NETWORK + "' = '" + id + "'");
             }
         }
+        if (oldVersion < 4) {
+            createStationsSearchTable(db);
+            fillStationsSearchTable(db);
+        }
+        if (oldVersion < 5) {
+            upgradeStationsColumnsTypes(db);
+            upgradeNetworksColumnsTypes(db);
+        }
+    }
+
+    /*
+     * Column types cannot be altered, the table is copied. Rowids are kept, they are the docids
+     * of the search table. ISO-8601 timestamps are converted by SQLite, 0 if invalid.
+     */
+    private static void upgradeStationsColumnsTypes(SQLiteDatabase db) {
+        String newTableName = STATIONS_TABLE_NAME + "_new";
+        createStationsTable(db, newTableName);
+        StringBuilder statusCode = new StringBuilder("CASE " + STATIONS_COLUMN_STATUS);
+        for (StationStatus status : StationStatus.values()) {
+            statusCode.append(" WHEN '").append(status.name()).append("' THEN ").append(status.getCode());
+        }
+        statusCode.append(" END");
+        String columns = STATIONS_COLUMN_ID + ", " + STATIONS_COLUMN_NAME + ", "
+                + STATIONS_COLUMN_LAST_UPDATE + ", " + STATIONS_COLUMN_LATITUDE + ", "
+                + STATIONS_COLUMN_LONGITUDE + ", " + STATIONS_COLUMN_FREE_BIKES + ", "
+                + STATIONS_COLUMN_EMPTY_SLOTS + ", " + STATIONS_COLUMN_ADDRESS + ", "
+                + STATIONS_COLUMN_BANKING + ", " + STATIONS_COLUMN_BONUS + ", "
+                + STATIONS_COLUMN_STATUS + ", " + STATIONS_COLUMN_EBIKES + ", "
+                + STATIONS_COLUMN_NETWORK;
+        db.execSQL("INSERT INTO " + newTableName + " (rowid, " + columns + ") SELECT rowid, "
+                + STATIONS_COLUMN_ID + ", " + STATIONS_COLUMN_NAME + ", "
+                + "COALESCE(CAST(ROUND((julianday(" + STATIONS_COLUMN_LAST_UPDATE
+                + ") - 2440587.5) * 86400000) AS INTEGER), 0), "
+                + "CAST(" + STATIONS_COLUMN_LATITUDE + " AS REAL), "
+                + "CAST(" + STATIONS_COLUMN_LONGITUDE + " AS REAL), "
+                + STATIONS_COLUMN_FREE_BIKES + ", " + STATIONS_COLUMN_EMPTY_SLOTS + ", "
+                + STATIONS_COLUMN_ADDRESS + ", " + STATIONS_COLUMN_BANKING + ", "
+                + STATIONS_COLUMN_BONUS + ", " + statusCode + ", "
+                + STATIONS_COLUMN_EBIKES + ", " + STATIONS_COLUMN_NETWORK
+                + " FROM " + STATIONS_TABLE_NAME);
+        db.execSQL("DROP TABLE " + STATIONS_TABLE_NAME);
+        db.execSQL("ALTER TABLE " + newTableName + " RENAME TO " + STATIONS_TABLE_NAME);
+    }
+
+    /* Coordinates were stored as the raw bits of the doubles, they are decoded in Java */
+    private static void upgradeNetworksColumnsTypes(SQLiteDatabase db) {
+        String newTableName = NETWORKS_TABLE_NAME + "_new";
+        createNetworksTable(db, newTableName);
+        SQLiteStatement insertStatement = db.compileStatement("INSERT INTO " + newTableName + " ("
+                + NETWORKS_COLUMN_ID + ", " + NETWORKS_COLUMN_NAME + ", " + NETWORKS_COLUMN_COMPANY + ", "
+                + NETWORKS_COLUMN_LATITUDE + ", " + NETWORKS_COLUMN_LONGITUDE + ", "
+                + NETWORKS_COLUMN_CITY + ", " + NETWORKS_COLUMN_COUNTRY + ", " + NETWORKS_COLUMN_COLOR
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        Cursor cursor = db.rawQuery("SELECT " + NETWORKS_COLUMN_ID + ", " + NETWORKS_COLUMN_NAME + ", "
+                + NETWORKS_COLUMN_COMPANY + ", " + NETWORKS_COLUMN_LATITUDE + ", "
+                + NETWORKS_COLUMN_LONGITUDE + ", " + NETWORKS_COLUMN_CITY + ", "
+                + NETWORKS_COLUMN_COUNTRY + ", " + NETWORKS_COLUMN_COLOR
+                + " FROM " + NETWORKS_TABLE_NAME, null);
+        try {
+            while (cursor.moveToNext()) {
+                insertStatement.bindString(1, cursor.getString(0));
+                insertStatement.bindString(2, cursor.getString(1));
+                insertStatement.bindString(3, cursor.getString(2));
+                insertStatement.bindDouble(4, Double.longBitsToDouble(cursor.getLong(3)));
+                insertStatement.bindDouble(5, Double.longBitsToDouble(cursor.getLong(4)));
+                insertStatement.bindString(6, cursor.getString(5));
+                insertStatement.bindString(7, cursor.getString(6));
+                if (cursor.isNull(7)) {
+                    insertStatement.bindNull(8);
+                } else {
+                    insertStatement.bindString(8, cursor.getString(7));
+                }
+                insertStatement.executeInsert();
+            }
+        } finally {
+            cursor.close();
+            insertStatement.close();
+        }
+        db.execSQL("DROP TABLE " + NETWORKS_TABLE_NAME);
+        db.execSQL("ALTER TABLE " + newTableName + " RENAME TO " + NETWORKS_TABLE_NAME);
+    }
+
+    /*
+     * Diacritics are folded in Java before indexing: the unicode61 tokenizer is not available
+     * on the oldest supported SQLite versions.
+     */
+    private static void createStationsSearchTable(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + STATIONS_SEARCH_TABLE_NAME + " USING fts4("
+                + STATIONS_SEARCH_COLUMN_TEXT + ")"
+        );
+    }
+
+    private static void fillStationsSearchTable(SQLiteDatabase db) {
+        SQLiteStatement insertStatement = db.compileStatement("INSERT INTO " + STATIONS_SEARCH_TABLE_NAME
+                + " (docid, " + STATIONS_SEARCH_COLUMN_TEXT + ") VALUES (?, ?)");
+        Cursor cursor = db.rawQuery("SELECT rowid, " + STATIONS_COLUMN_NAME + ", "
+                + STATIONS_COLUMN_ADDRESS + " FROM " + STATIONS_TABLE_NAME, null);
+        try {
+            while (cursor.moveToNext()) {
+                insertStatement.bindLong(1, cursor.getLong(0));
+                insertStatement.bindString(2, getSearchText(cursor.getString(1), cursor.getString(2)));
+                insertStatement.executeInsert();
+            }
+        } finally {
+            cursor.close();
+            insertStatement.close();
+        }
+    }
+
+    /* Folded name and address of a station, as indexed in the search table */
+    static String getSearchText(String name, String address) {
+        String text = StationsSearchIndex.fold(name);
+        if (address != null) {
+            text += " " + StationsSearchIndex.fold(address);
+        }
+        return text;
     }
 
 }
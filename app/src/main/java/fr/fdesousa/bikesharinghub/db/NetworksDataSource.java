@@ -19,10 +19,12 @@
 
 package fr.fdesousa.bikesharinghub.db;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -31,6 +33,8 @@ import fr.fdesousa.bikesharinghub.models.BikeNetworkInfo;
 import fr.fdesousa.bikesharinghub.models.BikeNetworkLocation;
 
 public class NetworksDataSource {
+    private static final String TAG = NetworksDataSource.class.getSimpleName();
+
     private DatabaseHelper dbHelper;
 
     private static final String QUERY_NETWORK_INFO_LIST = "SELECT *"
@@ -41,6 +45,17 @@ public class NetworksDataSource {
     private static final String QUERY_NETWORK_ID_LIST = "SELECT "
                 + DatabaseHelper.NETWORKS_COLUMN_ID
                 + " FROM " + DatabaseHelper.NETWORKS_TABLE_NAME;
+    private static final String INSERT_NETWORK = "INSERT OR REPLACE INTO "
+                + DatabaseHelper.NETWORKS_TABLE_NAME + " ("
+                + DatabaseHelper.NETWORKS_COLUMN_ID + ", "
+                + DatabaseHelper.NETWORKS_COLUMN_NAME + ", "
+                + DatabaseHelper.NETWORKS_COLUMN_COMPANY + ", "
+                + DatabaseHelper.NETWORKS_COLUMN_LATITUDE + ", "
+                + DatabaseHelper.NETWORKS_COLUMN_LONGITUDE + ", "
+                + DatabaseHelper.NETWORKS_COLUMN_CITY + ", "
+                + DatabaseHelper.NETWORKS_COLUMN_COUNTRY + ", "
+                + DatabaseHelper.NETWORKS_COLUMN_COLOR + ")"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
     private static final String QUERY_COLOR_BY_ID_LIST = "SELECT "
                 + DatabaseHelper.NETWORKS_COLUMN_ID + ", " + DatabaseHelper.NETWORKS_COLUMN_COLOR
                 + " FROM " + DatabaseHelper.NETWORKS_TABLE_NAME;
@@ -51,30 +66,37 @@ public class NetworksDataSource {
 
     public void storeNetworks(ArrayList<BikeNetworkInfo> bikeNetworks) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long startTime = SystemClock.elapsedRealtime();
         db.beginTransaction();
         try {
             clearNetworks();
-            for (BikeNetworkInfo bikeNetwork : bikeNetworks) {
-                ContentValues values = new ContentValues();
-                BikeNetworkLocation location = bikeNetwork.getLocation();
-                values.put(DatabaseHelper.NETWORKS_COLUMN_ID, bikeNetwork.getId());
-                values.put(DatabaseHelper.NETWORKS_COLUMN_NAME, bikeNetwork.getName());
-                values.put(DatabaseHelper.NETWORKS_COLUMN_COMPANY, bikeNetwork.getCompany());
-                values.put(DatabaseHelper.NETWORKS_COLUMN_LATITUDE,
-                        Double.doubleToRawLongBits(location.getLatitude()));
-                values.put(DatabaseHelper.NETWORKS_COLUMN_LONGITUDE,
-                        Double.doubleToRawLongBits(location.getLongitude()));
-                values.put(DatabaseHelper.NETWORKS_COLUMN_CITY, location.getCity());
-                values.put(DatabaseHelper.NETWORKS_COLUMN_COUNTRY, location.getCountry());
-                if (bikeNetwork.getColor() != null) {
-                    values.put(DatabaseHelper.NETWORKS_COLUMN_COLOR, bikeNetwork.getColor());
+            SQLiteStatement insertStatement = db.compileStatement(INSERT_NETWORK);
+            try {
+                for (BikeNetworkInfo bikeNetwork : bikeNetworks) {
+                    BikeNetworkLocation location = bikeNetwork.getLocation();
+                    insertStatement.bindString(1, bikeNetwork.getId());
+                    insertStatement.bindString(2, bikeNetwork.getName());
+                    insertStatement.bindString(3, bikeNetwork.getCompany());
+                    insertStatement.bindDouble(4, location.getLatitude());
+                    insertStatement.bindDouble(5, location.getLongitude());
+                    insertStatement.bindString(6, location.getCity());
+                    insertStatement.bindString(7, location.getCountry());
+                    if (bikeNetwork.getColor() != null) {
+                        insertStatement.bindString(8, bikeNetwork.getColor());
+                    } else {
+                        insertStatement.bindNull(8);
+                    }
+                    insertStatement.executeInsert();
                 }
-                db.insert(DatabaseHelper.NETWORKS_TABLE_NAME, null, values);
+            } finally {
+                insertStatement.close();
             }
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
+        Log.d(TAG, bikeNetworks.size() + " networks stored in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
     }
 
     public void clearNetworks() {
@@ -107,7 +129,7 @@ public class NetworksDataSource {
         try {
             if (cursor.moveToFirst()) {
                 BikeNetworkLocation foundLocation = new BikeNetworkLocation(
-                    Double.longBitsToDouble(cursor.getLong(3)), Double.longBitsToDouble(cursor.getLong(4)),
+                    cursor.getDouble(3), cursor.getDouble(4),
                     cursor.getString(5), cursor.getString(6));
                 BikeNetworkInfo foudNetworkInfo = new BikeNetworkInfo(
                     cursor.getString(0), cursor.getString(1),
@@ -130,7 +152,7 @@ public class NetworksDataSource {
             if (cursor.moveToFirst()) {
                 while (!cursor.isAfterLast()) {
                     BikeNetworkLocation currentLocation = new BikeNetworkLocation(
-                        Double.longBitsToDouble(cursor.getLong(3)), Double.longBitsToDouble(cursor.getLong(4)),
+                        cursor.getDouble(3), cursor.getDouble(4),
                         cursor.getString(5), cursor.getString(6));
                     BikeNetworkInfo currentNetwork = new BikeNetworkInfo(
                         cursor.getString(0), cursor.getString(1),
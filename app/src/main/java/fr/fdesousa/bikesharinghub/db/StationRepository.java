@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.db;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import fr.fdesousa.bikesharinghub.models.Station;
+
+/**
+ * Process-wide snapshot of the stored stations, sorted by name.
+ *
+ * The stations table is read once, then again only after a refresh wrote to it. Each snapshot
+ * is an immutable list replaced all at once, so it can be kept and read from any thread.
+ * Lists needing to be modified, e.g. by an adapter, must be copies.
+ */
+public class StationRepository {
+    private static final String TAG = StationRepository.class.getSimpleName();
+
+    private static StationRepository instance;
+
+    private final StationsDataSource mStationsDataSource;
+    private final DatabaseExecutor mDatabaseExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<OnStationsChangedListener> mListeners = new CopyOnWriteArrayList<>();
+    private volatile List<Station> mStations;
+
+    public interface OnStationsChangedListener {
+        /* Called on the main thread with the new snapshot */
+        void onStationsChanged(List<Station> stations);
+    }
+
+    public static synchronized StationRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new StationRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private StationRepository(Context context) {
+        mStationsDataSource = new StationsDataSource(context);
+        mDatabaseExecutor = DatabaseExecutor.getInstance(context);
+    }
+
+    /* Current snapshot, read from the database on first use */
+    public List<Station> getStations() {
+        List<Station> stations = mStations;
+        if (stations == null) {
+            synchronized (this) {
+                if (mStations == null) {
+                    mStations = loadStations();
+                }
+                stations = mStations;
+            }
+        }
+        return stations;
+    }
+
+    /*
+     * Current snapshot, without reading the database from the calling thread: the callback is
+     * called right away if the snapshot is loaded, from the main thread once loaded otherwise.
+     */
+    public void getStations(final DatabaseExecutor.Callback<List<Station>> callback) {
+        List<Station> stations = mStations;
+        if (stations != null) {
+            callback.onResult(stations);
+            return;
+        }
+        mDatabaseExecutor.executeRead(new Callable<List<Station>>() {
+            @Override
+            public List<Station> call() {
+                return getStations();
+            }
+        }, callback);
+    }
+
+    /* Read the stations again after they have been stored, and notify the listeners */
+    public void reload() {
+        final List<Station> stations;
+        synchronized (this) {
+            stations = loadStations();
+            mStations = stations;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                /* A later reload will notify its own snapshot */
+                if (stations != mStations) {
+                    return;
+                }
+                for (OnStationsChangedListener listener : mListeners) {
+                    listener.onStationsChanged(stations);
+                }
+            }
+        });
+    }
+
+    public void addOnStationsChangedListener(OnStationsChangedListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeOnStationsChangedListener(OnStationsChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private List<Station> loadStations() {
+        long startTime = SystemClock.elapsedRealtime();
+        ArrayList<Station> stations = mStationsDataSource.getStations();
+        Log.d(TAG, stations.size() + " stations loaded in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        return Collections.unmodifiableList(stations);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.db;
+
+import java.util.ArrayList;
+
+/**
+ * Stations written or removed by a store operation, by id.
+ */
+public class StationsChangeSet {
+    private final ArrayList<String> insertedIds = new ArrayList<>();
+    private final ArrayList<String> updatedIds = new ArrayList<>();
+    private final ArrayList<String> deletedIds = new ArrayList<>();
+    private int unchangedCount = 0;
+
+    void addInserted(String id) {
+        insertedIds.add(id);
+    }
+
+    void addUpdated(String id) {
+        updatedIds.add(id);
+    }
+
+    void addDeleted(String id) {
+        deletedIds.add(id);
+    }
+
+    void addUnchanged() {
+        unchangedCount++;
+    }
+
+    public ArrayList<String> getInsertedIds() {
+        return insertedIds;
+    }
+
+    public ArrayList<String> getUpdatedIds() {
+        return updatedIds;
+    }
+
+    public ArrayList<String> getDeletedIds() {
+        return deletedIds;
+    }
+
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    public boolean isEmpty() {
+        return insertedIds.isEmpty() && updatedIds.isEmpty() && deletedIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return insertedIds.size() + " inserted, " + updatedIds.size() + " updated, "
+                + deletedIds.size() + " deleted, " + unchangedCount + " unchanged";
+    }
+}
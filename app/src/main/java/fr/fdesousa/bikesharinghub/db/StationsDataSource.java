@@ -25,57 +25,300 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 
+import fr.fdesousa.bikesharinghub.index.StationsSearchIndex;
 import fr.fdesousa.bikesharinghub.models.Station;
 import fr.fdesousa.bikesharinghub.models.StationStatus;
 
 public class StationsDataSource {
+    private static final String TAG = StationsDataSource.class.getSimpleName();
+
+    private static final String INSERT_STATION = "INSERT OR REPLACE INTO "
+                + DatabaseHelper.STATIONS_TABLE_NAME + " ("
+                + DatabaseHelper.STATIONS_COLUMN_ID + ", "
+                + DatabaseHelper.STATIONS_COLUMN_NAME + ", "
+                + DatabaseHelper.STATIONS_COLUMN_LAST_UPDATE + ", "
+                + DatabaseHelper.STATIONS_COLUMN_LATITUDE + ", "
+                + DatabaseHelper.STATIONS_COLUMN_LONGITUDE + ", "
+                + DatabaseHelper.STATIONS_COLUMN_FREE_BIKES + ", "
+                + DatabaseHelper.STATIONS_COLUMN_EMPTY_SLOTS + ", "
+                + DatabaseHelper.STATIONS_COLUMN_ADDRESS + ", "
+                + DatabaseHelper.STATIONS_COLUMN_BANKING + ", "
+                + DatabaseHelper.STATIONS_COLUMN_BONUS + ", "
+                + DatabaseHelper.STATIONS_COLUMN_STATUS + ", "
+                + DatabaseHelper.STATIONS_COLUMN_EBIKES + ", "
+                + DatabaseHelper.STATIONS_COLUMN_NETWORK + ")"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    /* Same parameters as INSERT_STATION, the rowid of the station is kept */
+    private static final String UPDATE_STATION = "UPDATE "
+                + DatabaseHelper.STATIONS_TABLE_NAME + " SET "
+                + DatabaseHelper.STATIONS_COLUMN_NAME + " = ?2, "
+                + DatabaseHelper.STATIONS_COLUMN_LAST_UPDATE + " = ?3, "
+                + DatabaseHelper.STATIONS_COLUMN_LATITUDE + " = ?4, "
+                + DatabaseHelper.STATIONS_COLUMN_LONGITUDE + " = ?5, "
+                + DatabaseHelper.STATIONS_COLUMN_FREE_BIKES + " = ?6, "
+                + DatabaseHelper.STATIONS_COLUMN_EMPTY_SLOTS + " = ?7, "
+                + DatabaseHelper.STATIONS_COLUMN_ADDRESS + " = ?8, "
+                + DatabaseHelper.STATIONS_COLUMN_BANKING + " = ?9, "
+                + DatabaseHelper.STATIONS_COLUMN_BONUS + " = ?10, "
+                + DatabaseHelper.STATIONS_COLUMN_STATUS + " = ?11, "
+                + DatabaseHelper.STATIONS_COLUMN_EBIKES + " = ?12, "
+                + DatabaseHelper.STATIONS_COLUMN_NETWORK + " = ?13"
+                + " WHERE " + DatabaseHelper.STATIONS_COLUMN_ID + " = ?1";
+    private static final String DELETE_STATION = "DELETE FROM "
+                + DatabaseHelper.STATIONS_TABLE_NAME
+                + " WHERE " + DatabaseHelper.STATIONS_COLUMN_ID + " = ?";
+    private static final String INSERT_STATION_SEARCH = "INSERT INTO "
+                + DatabaseHelper.STATIONS_SEARCH_TABLE_NAME + " (docid, "
+                + DatabaseHelper.STATIONS_SEARCH_COLUMN_TEXT + ") VALUES (?, ?)";
+    private static final String DELETE_STATION_SEARCH = "DELETE FROM "
+                + DatabaseHelper.STATIONS_SEARCH_TABLE_NAME + " WHERE docid = ?";
+    /* Search entry of a stored station with the given id, whatever its network */
+    private static final String DELETE_STATION_SEARCH_BY_ID = "DELETE FROM "
+                + DatabaseHelper.STATIONS_SEARCH_TABLE_NAME + " WHERE docid IN (SELECT rowid FROM "
+                + DatabaseHelper.STATIONS_TABLE_NAME + " WHERE " + DatabaseHelper.STATIONS_COLUMN_ID + " = ?)";
+
     private DatabaseHelper dbHelper;
 
     public StationsDataSource(Context context) {
         dbHelper = DatabaseHelper.getInstance(context);
     }
 
-    public void storeStations(ArrayList<Station> stations) {
+    /**
+     * Update the stations of the given networks only: stations of the other saved networks are
+     * kept as is, while stations of networks that are not saved anymore are removed.
+     *
+     * Stations are compared with the stored ones by id and stored values, so that only new and
+     * modified stations are written, and only vanished ones are deleted. Modified stations are
+     * updated in place: their search entry is only rewritten if their name or address changed.
+     */
+    public StationsChangeSet storeStations(ArrayList<Station> stations, Collection<String> networksId) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
+        StationsChangeSet changeSet = new StationsChangeSet();
+        long startTime = SystemClock.elapsedRealtime();
         db.beginTransaction();
         try {
-            clearStations();
-            for (Station station : stations) {
-                ContentValues values = new ContentValues();
-                values.put(DatabaseHelper.STATIONS_COLUMN_ID, station.getId());
-                values.put(DatabaseHelper.STATIONS_COLUMN_NAME, station.getName());
-                values.put(DatabaseHelper.STATIONS_COLUMN_LAST_UPDATE, station.getLastUpdate());
-                values.put(DatabaseHelper.STATIONS_COLUMN_LATITUDE, String.valueOf(station.getLatitude()));
-                values.put(DatabaseHelper.STATIONS_COLUMN_LONGITUDE, String.valueOf(station.getLongitude()));
-                values.put(DatabaseHelper.STATIONS_COLUMN_FREE_BIKES, String.valueOf(station.getFreeBikes()));
-                values.put(DatabaseHelper.STATIONS_COLUMN_EMPTY_SLOTS, String.valueOf(station.getEmptySlots()));
-                values.put(DatabaseHelper.STATIONS_COLUMN_NETWORK, station.getNetworkId());
-                if (station.getAddress() != null)
-                    values.put(DatabaseHelper.STATIONS_COLUMN_ADDRESS, station.getAddress());
-                if (station.isBanking() != null)
-                    values.put(DatabaseHelper.STATIONS_COLUMN_BANKING, station.isBanking() ? 1 : 0);
-                if (station.isBonus() != null)
-                    values.put(DatabaseHelper.STATIONS_COLUMN_BONUS, station.isBonus() ? 1 : 0);
-                if (station.getStatus() != null)
-                    values.put(DatabaseHelper.STATIONS_COLUMN_STATUS, station.getStatus().name());
-                if (station.getEBikes() != null) {
-                    values.put(DatabaseHelper.STATIONS_COLUMN_EBIKES, String.valueOf(station.getEBikes()));
+            HashMap<String, StoredStation> storedStations = getStoredStations(db, networksId);
+            SQLiteStatement insertStatement = db.compileStatement(INSERT_STATION);
+            SQLiteStatement updateStatement = db.compileStatement(UPDATE_STATION);
+            SQLiteStatement deleteStatement = db.compileStatement(DELETE_STATION);
+            SQLiteStatement insertSearchStatement = db.compileStatement(INSERT_STATION_SEARCH);
+            SQLiteStatement deleteSearchStatement = db.compileStatement(DELETE_STATION_SEARCH);
+            SQLiteStatement deleteSearchByIdStatement = db.compileStatement(DELETE_STATION_SEARCH_BY_ID);
+            try {
+                for (Station station : stations) {
+                    StoredStation storedStation = storedStations.remove(station.getId());
+                    if (storedStation == null) {
+                        /*
+                         * The id may still be stored under a network that is not updated: the
+                         * row is replaced with a new rowid, its search entry must go with it.
+                         */
+                        deleteSearchByIdStatement.bindString(1, station.getId());
+                        deleteSearchByIdStatement.executeUpdateDelete();
+                        long rowId = insertStation(insertStatement, station);
+                        insertSearch(insertSearchStatement, rowId, station);
+                        changeSet.addInserted(station.getId());
+                    } else if (storedStation.isModifiedBy(station)) {
+                        bindStation(updateStatement, station);
+                        updateStatement.executeUpdateDelete();
+                        if (storedStation.isRenamedBy(station)) {
+                            deleteSearch(deleteSearchStatement, storedStation.rowId);
+                            insertSearch(insertSearchStatement, storedStation.rowId, station);
+                        }
+                        changeSet.addUpdated(station.getId());
+                    } else {
+                        changeSet.addUnchanged();
+                    }
+                }
+                for (HashMap.Entry<String, StoredStation> entry : storedStations.entrySet()) {
+                    deleteStatement.bindString(1, entry.getKey());
+                    deleteStatement.executeUpdateDelete();
+                    deleteSearch(deleteSearchStatement, entry.getValue().rowId);
+                    changeSet.addDeleted(entry.getKey());
                 }
-                db.insert(DatabaseHelper.STATIONS_TABLE_NAME, null, values);
+            } finally {
+                insertStatement.close();
+                updateStatement.close();
+                deleteStatement.close();
+                insertSearchStatement.close();
+                deleteSearchStatement.close();
+                deleteSearchByIdStatement.close();
             }
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
+        Log.d(TAG, "Stations stored in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        return changeSet;
     }
 
-    public void clearStations() {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        db.delete(DatabaseHelper.STATIONS_TABLE_NAME, null, null);
+    /* Stored stations of the given networks and of the networks that are not saved anymore */
+    private HashMap<String, StoredStation> getStoredStations(SQLiteDatabase db,
+                                                            Collection<String> networksId) {
+        StringBuilder query = new StringBuilder("SELECT id as _id, name, last_update, latitude, longitude, "
+                + "free_bikes, empty_slots, address, banking, bonus, status, ebikes, network_id, rowid "
+                + "FROM " + DatabaseHelper.STATIONS_TABLE_NAME + " "
+                + "WHERE network_id IS NULL OR network_id NOT IN (SELECT "
+                + DatabaseHelper.NETWORKS_COLUMN_ID + " FROM " + DatabaseHelper.NETWORKS_TABLE_NAME + ")");
+        if (!networksId.isEmpty()) {
+            query.append(" OR network_id IN (");
+            for (int i = 0; i < networksId.size(); i++) {
+                query.append(i == 0 ? "?" : ", ?");
+            }
+            query.append(")");
+        }
+        HashMap<String, StoredStation> storedStations = new HashMap<>();
+        Cursor cursor = db.rawQuery(query.toString(), networksId.toArray(new String[networksId.size()]));
+        try {
+            if (cursor.moveToFirst()) {
+                while (!cursor.isAfterLast()) {
+                    storedStations.put(cursor.getString(0),
+                            new StoredStation(cursor.getLong(13), toStation(cursor)));
+                    cursor.moveToNext();
+                }
+            }
+            return storedStations;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /* Stored state of a station, every column written by bindStation() is compared */
+    private static class StoredStation {
+        private final long rowId;
+        private final Station station;
+
+        StoredStation(long rowId, Station station) {
+            this.rowId = rowId;
+            this.station = station;
+        }
+
+        /* Every value is compared, as a feed does not always bump the last update */
+        boolean isModifiedBy(Station other) {
+            return station.getLastUpdate() != other.getLastUpdate()
+                    || station.getFreeBikes() != other.getFreeBikes()
+                    || station.getEmptySlots() != other.getEmptySlots()
+                    || station.getStatus() != other.getStatus()
+                    || Double.compare(station.getLatitude(), other.getLatitude()) != 0
+                    || Double.compare(station.getLongitude(), other.getLongitude()) != 0
+                    || !isEqual(station.getEBikes(), other.getEBikes())
+                    || !isEqual(station.isBanking(), other.isBanking())
+                    || !isEqual(station.isBonus(), other.isBonus())
+                    || station.getNetworkId() == null || !station.getNetworkId().equals(other.getNetworkId())
+                    || isRenamedBy(other);
+        }
+
+        boolean isRenamedBy(Station other) {
+            return !station.getName().equals(other.getName())
+                    || !isEqual(station.getAddress(), other.getAddress());
+        }
+
+        private static boolean isEqual(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /* Returns the rowid of the station */
+    private long insertStation(SQLiteStatement statement, Station station) {
+        bindStation(statement, station);
+        return statement.executeInsert();
+    }
+
+    /* The statement is reused for every station, all values are bound again each time */
+    private void bindStation(SQLiteStatement statement, Station station) {
+        statement.bindString(1, station.getId());
+        statement.bindString(2, station.getName());
+        statement.bindLong(3, station.getLastUpdate());
+        statement.bindDouble(4, station.getLatitude());
+        statement.bindDouble(5, station.getLongitude());
+        statement.bindLong(6, station.getFreeBikes());
+        statement.bindLong(7, station.getEmptySlots());
+        bindStringOrNull(statement, 8, station.getAddress());
+        bindBooleanOrNull(statement, 9, station.isBanking());
+        bindBooleanOrNull(statement, 10, station.isBonus());
+        if (station.getStatus() != null) {
+            statement.bindLong(11, station.getStatus().getCode());
+        } else {
+            statement.bindNull(11);
+        }
+        if (station.getEBikes() != null) {
+            statement.bindLong(12, station.getEBikes());
+        } else {
+            statement.bindNull(12);
+        }
+        bindStringOrNull(statement, 13, station.getNetworkId());
+    }
+
+    private void insertSearch(SQLiteStatement statement, long rowId, Station station) {
+        statement.bindLong(1, rowId);
+        statement.bindString(2, DatabaseHelper.getSearchText(station.getName(), station.getAddress()));
+        statement.executeInsert();
+    }
+
+    private void deleteSearch(SQLiteStatement statement, long rowId) {
+        statement.bindLong(1, rowId);
+        statement.executeUpdateDelete();
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    private static void bindBooleanOrNull(SQLiteStatement statement, int index, Boolean value) {
+        if (value != null) {
+            statement.bindLong(index, value ? 1 : 0);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    /*
+     * Stations whose name or address has words starting with every word of the query, stations
+     * whose name starts with the query first.
+     */
+    public ArrayList<Station> searchStations(String query, int limit) {
+        String folded = StationsSearchIndex.fold(query);
+        StringBuilder match = new StringBuilder();
+        for (String word : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                match.append(match.length() == 0 ? "" : " ").append(word).append('*');
+            }
+        }
+        ArrayList<Station> stations = new ArrayList<>();
+        if (match.length() == 0) {
+            return stations;
+        }
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT sta.id as _id, name, last_update, latitude, longitude, "
+                + "free_bikes, empty_slots, address, banking, bonus, status, ebikes, network_id "
+                + "FROM " + DatabaseHelper.STATIONS_SEARCH_TABLE_NAME + " search "
+                + "INNER JOIN " + DatabaseHelper.STATIONS_TABLE_NAME + " sta "
+                + "ON sta.rowid = search.docid "
+                + "WHERE search." + DatabaseHelper.STATIONS_SEARCH_COLUMN_TEXT + " MATCH ? "
+                + "ORDER BY search." + DatabaseHelper.STATIONS_SEARCH_COLUMN_TEXT + " LIKE ? DESC, "
+                + "length(name) LIMIT ?",
+                new String[] { match.toString(), folded + "%", String.valueOf(limit) });
+        try {
+            while (cursor.moveToNext()) {
+                stations.add(toStation(cursor));
+            }
+            return stations;
+        } finally {
+            cursor.close();
+        }
     }
 
     public ArrayList<Station> getStations() {
@@ -100,11 +343,32 @@ public class StationsDataSource {
         }
     }
 
+    /* Id of the networks that currently have stations in the database */
+    public HashSet<String> getStoredNetworksId() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        HashSet<String> networksId = new HashSet<>();
+        Cursor cursor = db.rawQuery("SELECT DISTINCT network_id "
+                + "FROM " + DatabaseHelper.STATIONS_TABLE_NAME, null);
+        try {
+            if (cursor.moveToFirst()) {
+                while (!cursor.isAfterLast()) {
+                    if (!cursor.isNull(0)) {
+                        networksId.add(cursor.getString(0));
+                    }
+                    cursor.moveToNext();
+                }
+            }
+            return networksId;
+        } finally {
+            cursor.close();
+        }
+    }
+
     public Station getStation(String id) {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         Cursor cursor = db.rawQuery("SELECT id as _id, name, last_update, latitude, longitude, "
-                + "free_bikes, empty_slots, address, banking, bonus, status, ebikes "
+                + "free_bikes, empty_slots, address, banking, bonus, status, ebikes, network_id "
                 + "FROM " + DatabaseHelper.STATIONS_TABLE_NAME + " "
                 + "WHERE id = ?", new String[] { id });
         try {
@@ -170,7 +434,7 @@ public class StationsDataSource {
         Station station = new Station(
                 cursor.getString(0), // id
                 cursor.getString(1), // name
-                cursor.getString(2), // last_update
+                cursor.getLong(2), // last_update
                 cursor.getDouble(3), // latitude
                 cursor.getDouble(4), // longitude
                 cursor.getInt(5), // free_bikes
@@ -187,7 +451,7 @@ public class StationsDataSource {
             station.setBonus(cursor.getInt(9) != 0); // bonus
         }
         if (!cursor.isNull(10)) {
-            station.setStatus(StationStatus.valueOf(cursor.getString(10))); // status
+            station.setStatus(StationStatus.fromCode(cursor.getInt(10))); // status
         }
         if (!cursor.isNull(11)) {
             station.setEBikes(cursor.getInt(11)); // ebikes
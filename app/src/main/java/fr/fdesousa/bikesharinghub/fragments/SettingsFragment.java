@@ -35,9 +35,10 @@ import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
-import java.util.List;
+import java.util.ArrayList;
 
-import fr.fdesousa.bikesharinghub.db.NetworksDataSource;
+import fr.fdesousa.bikesharinghub.db.AsyncNetworksDataSource;
+import fr.fdesousa.bikesharinghub.db.DatabaseExecutor;
 import fr.fdesousa.bikesharinghub.models.BikeNetworkInfo;
 
 import fr.fdesousa.bikesharinghub.R;
@@ -107,25 +108,32 @@ public class SettingsFragment extends PreferenceFragment implements SharedPrefer
 
     private void updatePreference(String key){
         if (key.equals(PREF_KEY_CHOOSE_NETWORK) && mContext != null) {
-            Preference preference = findPreference(key);
-            NetworksDataSource networksDataSource = new NetworksDataSource(mContext);
-            List<String> idList = networksDataSource.getNetworksId();
-            switch(idList.size()) {
-                case 0:
-                    preference.setSummary(getString(R.string.pref_title_bike_networks_list_summary_none));
-                    break;
-                case 1:
-                    BikeNetworkInfo networkInfo = networksDataSource.getNetworkInfoFromId(idList.get(0));
-                    String networkName = networkInfo.getName();
-                    String networkCity = networkInfo.getLocation().getCity();
-                    preference.setSummary(networkName + " (" + networkCity + ")");
-                    break;
-                default:
-                    preference.setSummary(getResources().getString(
-                            R.string.pref_title_bike_networks_list_summary_multiple_selection,
-                            idList.size()));
-                    break;
+            final Preference preference = findPreference(key);
+            AsyncNetworksDataSource networksDataSource = new AsyncNetworksDataSource(mContext);
+            networksDataSource.getNetworkInfoList(new DatabaseExecutor.Callback<ArrayList<BikeNetworkInfo>>() {
+                @Override
+                public void onResult(ArrayList<BikeNetworkInfo> networkInfoList) {
+                    if (!isAdded()) {
+                        return;
+                    }
+                    switch(networkInfoList.size()) {
+                        case 0:
+                            preference.setSummary(getString(R.string.pref_title_bike_networks_list_summary_none));
+                            break;
+                        case 1:
+                            BikeNetworkInfo networkInfo = networkInfoList.get(0);
+                            String networkName = networkInfo.getName();
+                            String networkCity = networkInfo.getLocation().getCity();
+                            preference.setSummary(networkName + " (" + networkCity + ")");
+                            break;
+                        default:
+                            preference.setSummary(getResources().getString(
+                                    R.string.pref_title_bike_networks_list_summary_multiple_selection,
+                                    networkInfoList.size()));
+                            break;
+                    }
                 }
+            });
         }
     }
 }
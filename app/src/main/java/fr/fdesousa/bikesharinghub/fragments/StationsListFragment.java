@@ -36,8 +36,10 @@ import android.widget.ListView;
 import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import fr.fdesousa.bikesharinghub.activities.MapActivity;
+import fr.fdesousa.bikesharinghub.db.DatabaseExecutor;
 import fr.fdesousa.bikesharinghub.models.Station;
 
 import fr.fdesousa.bikesharinghub.R;
@@ -78,19 +80,26 @@ public class StationsListFragment extends Fragment implements ViewModelStoreOwne
         }
         StationsListViewModelFactory factory = new StationsListViewModelFactory(getActivity().getApplication());
         StationsListViewModel model = new ViewModelProvider(this, factory).get(StationsListViewModel.class);
+        /* The adapter has its own list, filled once the stations are loaded */
+        stations = new ArrayList<Station>();
+        stationsListAdapter = new StationsListAdapter(getActivity(),
+                R.layout.station_list_item, stations);
+        DatabaseExecutor.Callback<List<Station>> loadedCallback = new DatabaseExecutor.Callback<List<Station>>() {
+            @Override
+            public void onResult(List<Station> loadedStations) {
+                updateStationsList(loadedStations);
+            }
+        };
         switch(getArguments().getInt(KEY_FRAGMENT_ID)) {
             case 1:
-                stations = new ArrayList<Station>();
                 break;
             case 2:
-                stations = model.getFavoriteStations();
+                model.getFavoriteStations(loadedCallback);
                 break;
             case 3:
-                stations = model.getStations();
+                model.getStations(loadedCallback);
                 break;
         }
-        stationsListAdapter = new StationsListAdapter(getActivity(),
-                R.layout.station_list_item, stations);
     }
 
     @Override
@@ -133,7 +142,7 @@ public class StationsListFragment extends Fragment implements ViewModelStoreOwne
     }
 
 
-    public void updateStationsList(ArrayList<Station> stations) {
+    public void updateStationsList(List<Station> stations) {
         if (stationsListAdapter != null) {
             stationsListAdapter.clear();
             stationsListAdapter.addAll(stations);
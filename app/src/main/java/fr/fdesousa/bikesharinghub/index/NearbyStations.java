@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.index;
+
+/**
+ * Stations around a moving location, sorted by distance.
+ *
+ * The index is queried with the radius extended by a margin: as long as the location stays
+ * within this margin of the queried one, every station in the radius is among these
+ * candidates, so only their distances are computed again.
+ */
+public class NearbyStations {
+    private final StationsSpatialIndex mIndex;
+    private final double mRadius;
+    private final double mMargin;
+    private final StationsSpatialIndex.Neighbours mCandidates = new StationsSpatialIndex.Neighbours();
+    private final StationsSpatialIndex.Neighbours mNearby = new StationsSpatialIndex.Neighbours();
+    private final StationsSpatialIndex.Neighbours mPrevious = new StationsSpatialIndex.Neighbours();
+    private boolean mHasCenter = false;
+    private double mCenterLatitude;
+    private double mCenterLongitude;
+
+    /**
+     * @param radius radius of the nearby stations, in meters
+     * @param margin distance the location may move before the index is queried again, in meters
+     */
+    public NearbyStations(StationsSpatialIndex index, double radius, double margin) {
+        mIndex = index;
+        mRadius = radius;
+        mMargin = margin;
+    }
+
+    public StationsSpatialIndex getIndex() {
+        return mIndex;
+    }
+
+    public double getRadius() {
+        return mRadius;
+    }
+
+    /* Rank the stations around the new location, returns whether the ranking changed */
+    public boolean update(double latitude, double longitude) {
+        mPrevious.copyFrom(mNearby);
+        if (!mHasCenter || StationsSpatialIndex.getDistance(mCenterLatitude, mCenterLongitude,
+                latitude, longitude) > mMargin) {
+            mIndex.findWithinRadius(latitude, longitude, mRadius + mMargin, mCandidates);
+            mCenterLatitude = latitude;
+            mCenterLongitude = longitude;
+            mHasCenter = true;
+        }
+        mNearby.reset();
+        for (int i = 0; i < mCandidates.size(); i++) {
+            int station = mCandidates.getStationIndex(i);
+            double distance = StationsSpatialIndex.getDistance(latitude, longitude,
+                    mIndex.getLatitude(station), mIndex.getLongitude(station));
+            if (distance <= mRadius) {
+                mNearby.add(station, (float) distance);
+            }
+        }
+        mNearby.sort();
+        return !mNearby.hasSameStations(mPrevious);
+    }
+
+    /* Stations of the last update, sorted by distance */
+    public StationsSpatialIndex.Neighbours getNearby() {
+        return mNearby;
+    }
+}
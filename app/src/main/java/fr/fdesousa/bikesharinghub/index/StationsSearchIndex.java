@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.index;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Station names search, rebuilt from the previous one for each stations list.
+ *
+ * Names are folded once: accents removed, lower case, separators (spaces, quotes, dashes and
+ * underscores) collapsed to a single space. Each trigram of a folded name, spaces skipped,
+ * has a postings list of the stations containing it. Everything is kept in flat arrays, about
+ * 4 bytes per trigram occurrence and 2 bytes per folded character.
+ *
+ * Stations sharing trigrams with the query are scored by counting them. A station having all
+ * of them matches if its name contains the query, separators ignored: matches at the start of
+ * the name come first, then matches at the start of a word. Stations missing a few trigrams
+ * are typo-tolerant matches, ranked after them by the number of missing trigrams.
+ *
+ * Searches reuse internal buffers, they must be run from a single thread.
+ */
+public class StationsSearchIndex {
+    private static final int RANK_NAME_START = 0;
+    private static final int RANK_WORD_START = 1;
+    private static final int RANK_CONTAINS = 2;
+    private static final int RANK_FUZZY = 3;
+    /* Part of the query trigrams a fuzzy match must have */
+    private static final float FUZZY_MIN_SHARED = 0.5f;
+
+    private final String[] mRawNames;
+    private final char[] mChars;
+    private final int[] mNameStarts;
+    private final int[] mTrigrams;
+    private final int[] mPostingStarts;
+    private final int[] mPostings;
+    private final int[] mScores;
+    private int[] mTouched;
+
+    public StationsSearchIndex(List<String> names) {
+        this(names, null);
+    }
+
+    /**
+     * Names already folded by the previous index are not folded again, and the whole index is
+     * reused if the names did not change.
+     */
+    public StationsSearchIndex(List<String> names, StationsSearchIndex previous) {
+        int count = names.size();
+        mRawNames = names.toArray(new String[count]);
+        if (previous != null && Arrays.equals(mRawNames, previous.mRawNames)) {
+            mChars = previous.mChars;
+            mNameStarts = previous.mNameStarts;
+            mTrigrams = previous.mTrigrams;
+            mPostingStarts = previous.mPostingStarts;
+            mPostings = previous.mPostings;
+        } else {
+            String[] folded = foldNames(mRawNames, previous);
+            int length = 0;
+            for (String name : folded) {
+                length += name.length();
+            }
+            mChars = new char[length];
+            mNameStarts = new int[count + 1];
+            int trigramCount = 0;
+            for (int i = 0; i < count; i++) {
+                folded[i].getChars(0, folded[i].length(), mChars, mNameStarts[i]);
+                mNameStarts[i + 1] = mNameStarts[i] + folded[i].length();
+                trigramCount += Math.max(0, folded[i].length() - 2);
+            }
+
+            /* (trigram, station) pairs, sorted to group the postings of each trigram */
+            long[] entries = new long[trigramCount];
+            int entryCount = 0;
+            for (int i = 0; i < count; i++) {
+                String letters = folded[i].replace(" ", "");
+                for (int j = 0; j + 3 <= letters.length(); j++) {
+                    entries[entryCount++] = ((long) getTrigram(letters, j) << 32) | i;
+                }
+            }
+            Arrays.sort(entries, 0, entryCount);
+
+            int[] trigrams = new int[entryCount];
+            int[] postingStarts = new int[entryCount + 1];
+            int[] postings = new int[entryCount];
+            int distinct = 0;
+            int postingCount = 0;
+            for (int i = 0; i < entryCount; i++) {
+                if (i > 0 && entries[i] == entries[i - 1]) {
+                    continue; //trigram appearing several times in a name
+                }
+                int trigram = (int) (entries[i] >> 32);
+                if (distinct == 0 || trigrams[distinct - 1] != trigram) {
+                    trigrams[distinct] = trigram;
+                    postingStarts[distinct] = postingCount;
+                    distinct++;
+                }
+                postings[postingCount++] = (int) entries[i];
+            }
+            postingStarts[distinct] = postingCount;
+            mTrigrams = Arrays.copyOf(trigrams, distinct);
+            mPostingStarts = Arrays.copyOf(postingStarts, distinct + 1);
+            mPostings = Arrays.copyOf(postings, postingCount);
+        }
+        mScores = new int[count];
+        mTouched = new int[64];
+    }
+
+    private static String[] foldNames(String[] names, StationsSearchIndex previous) {
+        HashMap<String, Integer> previousNames = new HashMap<>();
+        if (previous != null) {
+            for (int i = 0; i < previous.mRawNames.length; i++) {
+                previousNames.put(previous.mRawNames[i], i);
+            }
+        }
+        String[] folded = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            Integer index = previousNames.get(names[i]);
+            folded[i] = index != null ? previous.getFoldedName(index) : fold(names[i]);
+        }
+        return folded;
+    }
+
+    public int size() {
+        return mRawNames.length;
+    }
+
+    private String getFoldedName(int station) {
+        return new String(mChars, mNameStarts[station], mNameStarts[station + 1] - mNameStarts[station]);
+    }
+
+    /* Indexes of the matching stations, best matches first */
+    public int[] search(String query, int maxResults) {
+        String letters = fold(query).replace(" ", "");
+        if (letters.isEmpty()) {
+            return new int[0];
+        }
+        long[] matches;
+        int count = 0;
+        if (letters.length() < 3) {
+            /* Too short for trigrams, every name is checked */
+            matches = new long[mRawNames.length];
+            for (int station = 0; station < mRawNames.length; station++) {
+                int rank = match(station, letters);
+                if (rank != -1) {
+                    matches[count++] = getSortKey(rank, 0, station);
+                }
+            }
+        } else {
+            int[] queryTrigrams = getDistinctTrigrams(letters);
+            int touched = countSharedTrigrams(queryTrigrams);
+            int minShared = Math.max(1, (int) Math.ceil(queryTrigrams.length * FUZZY_MIN_SHARED));
+            matches = new long[touched];
+            for (int i = 0; i < touched; i++) {
+                int station = mTouched[i];
+                int shared = mScores[station];
+                mScores[station] = 0;
+                int rank = shared == queryTrigrams.length ? match(station, letters) : -1;
+                if (rank != -1) {
+                    matches[count++] = getSortKey(rank, 0, station);
+                } else if (shared >= minShared) {
+                    matches[count++] = getSortKey(RANK_FUZZY, queryTrigrams.length - shared, station);
+                }
+            }
+        }
+        Arrays.sort(matches, 0, count);
+        int[] result = new int[Math.min(count, maxResults)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (int) matches[i];
+        }
+        return result;
+    }
+
+    /* Ranked first, then by missing trigrams, then shorter names first */
+    private long getSortKey(int rank, int missing, int station) {
+        int length = mNameStarts[station + 1] - mNameStarts[station];
+        return ((long) rank << 56) | ((long) Math.min(missing, 0xFF) << 48)
+                | ((long) Math.min(length, 0xFFFF) << 32) | station;
+    }
+
+    private static int[] getDistinctTrigrams(String letters) {
+        int[] trigrams = new int[letters.length() - 2];
+        for (int j = 0; j < trigrams.length; j++) {
+            trigrams[j] = getTrigram(letters, j);
+        }
+        Arrays.sort(trigrams);
+        int distinct = 0;
+        for (int j = 0; j < trigrams.length; j++) {
+            if (distinct == 0 || trigrams[distinct - 1] != trigrams[j]) {
+                trigrams[distinct++] = trigrams[j];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    /* Count the query trigrams of each station, returns the number of stations touched */
+    private int countSharedTrigrams(int[] queryTrigrams) {
+        int touched = 0;
+        for (int trigram : queryTrigrams) {
+            int index = Arrays.binarySearch(mTrigrams, trigram);
+            if (index < 0) {
+                continue;
+            }
+            for (int i = mPostingStarts[index]; i < mPostingStarts[index + 1]; i++) {
+                int station = mPostings[i];
+                if (mScores[station]++ == 0) {
+                    if (touched == mTouched.length) {
+                        mTouched = Arrays.copyOf(mTouched, touched * 2);
+                    }
+                    mTouched[touched++] = station;
+                }
+            }
+        }
+        return touched;
+    }
+
+    /* Best rank of the letters in the folded name, spaces ignored, -1 if not found */
+    private int match(int station, String letters) {
+        int nameStart = mNameStarts[station];
+        int nameEnd = mNameStarts[station + 1];
+        int best = -1;
+        for (int start = nameStart; start < nameEnd; start++) {
+            if (mChars[start] == ' ') {
+                continue;
+            }
+            int i = start;
+            int j = 0;
+            while (i < nameEnd && j < letters.length()) {
+                char c = mChars[i++];
+                if (c == ' ') {
+                    continue;
+                }
+                if (c != letters.charAt(j++)) {
+                    break;
+                }
+                if (j == letters.length()) {
+                    int rank = start == nameStart ? RANK_NAME_START
+                            : mChars[start - 1] == ' ' ? RANK_WORD_START : RANK_CONTAINS;
+                    if (rank == RANK_NAME_START) {
+                        return rank;
+                    }
+                    if (best == -1 || rank < best) {
+                        best = rank;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /* Exact for characters below U+0400, hashed beyond */
+    private static int getTrigram(String letters, int start) {
+        char c1 = letters.charAt(start);
+        char c2 = letters.charAt(start + 1);
+        char c3 = letters.charAt(start + 2);
+        if (c1 < 0x400 && c2 < 0x400 && c3 < 0x400) {
+            return (c1 << 20) | (c2 << 10) | c3;
+        }
+        return 0x40000000 | ((c1 * 961 + c2 * 31 + c3) & 0x3FFFFFFF);
+    }
+
+    /* Accents removed, lower case, separators collapsed to a single space */
+    public static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        boolean separator = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (c >= '\u0300' && c <= '\u036f') { //combining diacritical marks
+                continue;
+            }
+            if (Character.isWhitespace(c) || c == '\'' || c == '-' || c == '_') {
+                separator = true;
+                continue;
+            }
+            if (separator && folded.length() > 0) {
+                folded.append(' ');
+            }
+            separator = false;
+            folded.append(Character.toLowerCase(c));
+        }
+        return folded.toString();
+    }
+}
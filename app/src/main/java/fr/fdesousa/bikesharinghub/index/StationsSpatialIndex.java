@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.index;
+
+import java.util.Arrays;
+
+/**
+ * Grid of the stations for nearby queries, built once for each stations list.
+ *
+ * Stations are bucketed in cells of CELL_SIZE degrees, stored as arrays sorted by cell: the
+ * stations of a cell are found with a binary search. A query only visits the cells around the
+ * location and computes the distance of each candidate once.
+ */
+public class StationsSpatialIndex {
+    private static final double CELL_SIZE = 0.01;
+    private static final int ROWS = (int) Math.round(180 / CELL_SIZE);
+    private static final int COLUMNS = (int) Math.round(360 / CELL_SIZE);
+    private static final double EARTH_RADIUS = 6371008.8;
+    private static final double CELL_METERS = Math.toRadians(CELL_SIZE) * EARTH_RADIUS;
+    /* Beyond this many rings of cells, scanning all the stations is cheaper */
+    private static final int MAX_RINGS = 32;
+
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final long[] mCells;
+    private final int[] mCellStarts;
+    private final int[] mStations;
+
+    public StationsSpatialIndex(double[] latitudes, double[] longitudes) {
+        mLatitudes = latitudes;
+        mLongitudes = longitudes;
+        int count = latitudes.length;
+        long[] entries = new long[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = ((long) getCell(getRow(latitudes[i]), getColumn(longitudes[i])) << 32) | i;
+        }
+        Arrays.sort(entries);
+
+        mStations = new int[count];
+        long[] cells = new long[count];
+        int[] cellStarts = new int[count + 1];
+        int cellCount = 0;
+        for (int i = 0; i < count; i++) {
+            long cell = entries[i] >>> 32;
+            mStations[i] = (int) entries[i];
+            if (cellCount == 0 || cells[cellCount - 1] != cell) {
+                cells[cellCount] = cell;
+                cellStarts[cellCount] = i;
+                cellCount++;
+            }
+        }
+        cellStarts[cellCount] = count;
+        mCells = Arrays.copyOf(cells, cellCount);
+        mCellStarts = Arrays.copyOf(cellStarts, cellCount + 1);
+    }
+
+    public int size() {
+        return mLatitudes.length;
+    }
+
+    public double getLatitude(int station) {
+        return mLatitudes[station];
+    }
+
+    public double getLongitude(int station) {
+        return mLongitudes[station];
+    }
+
+    /* Stations within the radius, in meters, sorted by distance */
+    public void findWithinRadius(double latitude, double longitude, double radius, Neighbours result) {
+        result.reset();
+        int row = getRow(latitude);
+        int column = getColumn(longitude);
+        int rowRings = (int) Math.ceil(radius / CELL_METERS);
+        int columnRings = getColumnRings(latitude, rowRings, radius);
+        if (columnRings > MAX_RINGS * MAX_RINGS) {
+            addAll(latitude, longitude, radius, result);
+        } else {
+            for (int r = Math.max(0, row - rowRings); r <= Math.min(ROWS - 1, row + rowRings); r++) {
+                for (int c = column - columnRings; c <= column + columnRings; c++) {
+                    addCell(r, c, latitude, longitude, radius, result);
+                }
+            }
+        }
+        result.sort();
+    }
+
+    /* The k stations closest to the location, sorted by distance */
+    public void findNearest(double latitude, double longitude, int k, Neighbours result) {
+        result.reset();
+        if (k <= 0) {
+            return;
+        }
+        int row = getRow(latitude);
+        int column = getColumn(longitude);
+        for (int ring = 0; ring <= MAX_RINGS; ring++) {
+            for (int r = row - ring; r <= row + ring; r++) {
+                if (r < 0 || r >= ROWS) {
+                    continue;
+                }
+                boolean edgeRow = r == row - ring || r == row + ring;
+                for (int c = column - ring; c <= column + ring; c += edgeRow ? 1 : 2 * ring) {
+                    addCell(r, c, latitude, longitude, Double.MAX_VALUE, result);
+                }
+            }
+
+            /* Stations out of the visited rings are at least that far */
+            double latitudeMax = Math.min(90, Math.abs(latitude) + (ring + 1) * CELL_SIZE);
+            double bound = ring * CELL_METERS * Math.cos(Math.toRadians(latitudeMax));
+            if (result.size() >= k) {
+                result.sort();
+                if (result.getDistance(k - 1) <= bound) {
+                    result.truncate(k);
+                    return;
+                }
+            }
+        }
+        result.reset();
+        addAll(latitude, longitude, Double.MAX_VALUE, result);
+        result.sort();
+        result.truncate(k);
+    }
+
+    /* Great-circle distance in meters, with the haversine formula */
+    public static double getDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double sinLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinLatitude * sinLatitude + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private void addCell(int row, int column, double latitude, double longitude, double radius,
+                         Neighbours result) {
+        int cell = Arrays.binarySearch(mCells, getCell(row, wrapColumn(column)));
+        if (cell < 0) {
+            return;
+        }
+        for (int i = mCellStarts[cell]; i < mCellStarts[cell + 1]; i++) {
+            add(mStations[i], latitude, longitude, radius, result);
+        }
+    }
+
+    private void addAll(double latitude, double longitude, double radius, Neighbours result) {
+        for (int i = 0; i < mLatitudes.length; i++) {
+            add(i, latitude, longitude, radius, result);
+        }
+    }
+
+    private void add(int station, double latitude, double longitude, double radius, Neighbours result) {
+        double distance = getDistance(latitude, longitude, mLatitudes[station], mLongitudes[station]);
+        if (distance <= radius) {
+            result.add(station, (float) distance);
+        }
+    }
+
+    /* Half the number of cells of a row spanned by the radius */
+    private static int getColumnRings(double latitude, int rowRings, double radius) {
+        double latitudeMax = Math.abs(latitude) + (rowRings + 1) * CELL_SIZE;
+        if (latitudeMax >= 90) {
+            return COLUMNS / 2;
+        }
+        double cellWidth = CELL_METERS * Math.cos(Math.toRadians(latitudeMax));
+        return (int) Math.min(COLUMNS / 2, Math.ceil(radius / cellWidth));
+    }
+
+    private static int getRow(double latitude) {
+        return Math.max(0, Math.min(ROWS - 1, (int) Math.floor((latitude + 90) / CELL_SIZE)));
+    }
+
+    private static int getColumn(double longitude) {
+        return wrapColumn((int) Math.floor((longitude + 180) / CELL_SIZE));
+    }
+
+    private static int wrapColumn(int column) {
+        return ((column % COLUMNS) + COLUMNS) % COLUMNS;
+    }
+
+    private static long getCell(int row, int column) {
+        return (long) row * COLUMNS + column;
+    }
+
+    /**
+     * Result of a query, meant to be reused from one query to the next.
+     */
+    public static class Neighbours {
+        /* Distance bits in the high half, so that entries sort by distance */
+        private long[] mEntries = new long[64];
+        private int mSize = 0;
+
+        void reset() {
+            mSize = 0;
+        }
+
+        void add(int station, float distance) {
+            if (mSize == mEntries.length) {
+                mEntries = Arrays.copyOf(mEntries, mSize * 2);
+            }
+            mEntries[mSize++] = ((long) Float.floatToIntBits(distance) << 32) | station;
+        }
+
+        void sort() {
+            Arrays.sort(mEntries, 0, mSize);
+        }
+
+        void truncate(int size) {
+            mSize = Math.min(mSize, size);
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        /* Whether both results hold the same stations in the same order */
+        public boolean hasSameStations(Neighbours other) {
+            if (other.mSize != mSize) {
+                return false;
+            }
+            for (int i = 0; i < mSize; i++) {
+                if (getStationIndex(i) != other.getStationIndex(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void copyFrom(Neighbours other) {
+            if (mEntries.length < other.mSize) {
+                mEntries = new long[other.mEntries.length];
+            }
+            System.arraycopy(other.mEntries, 0, mEntries, 0, other.mSize);
+            mSize = other.mSize;
+        }
+
+        public int getStationIndex(int i) {
+            return (int) mEntries[i];
+        }
+
+        /* Distance in meters */
+        public float getDistance(int i) {
+            return Float.intBitsToFloat((int) (mEntries[i] >>> 32));
+        }
+    }
+}
@@ -29,7 +29,7 @@ import java.io.Serializable;
 public class Station implements Serializable, Comparable<Station> {
     private String id;
     private String name;
-    private String lastUpdate;
+    private long lastUpdate;
     private double latitude;
     private double longitude;
     private int freeBikes;
@@ -42,7 +42,7 @@ public class Station implements Serializable, Comparable<Station> {
     private StationStatus status;
     private Integer eBikes;
 
-    public Station(String id, String name, String lastUpdate, double latitude, double longitude, int freeBikes, int emptySlots, String networkId) {
+    public Station(String id, String name, long lastUpdate, double latitude, double longitude, int freeBikes, int emptySlots, String networkId) {
         this.id = id;
         this.name = name;
         this.lastUpdate = lastUpdate;
@@ -67,7 +67,8 @@ public class Station implements Serializable, Comparable<Station> {
         return name;
     }
 
-    public String getLastUpdate() {
+    /* Epoch milliseconds, in UTC */
+    public long getLastUpdate() {
         return lastUpdate;
     }
 
@@ -91,6 +92,10 @@ public class Station implements Serializable, Comparable<Station> {
         return networkId;
     }
 
+    public void setNetworkId(String networkId) {
+        this.networkId = networkId;
+    }
+
     public String getAddress() {
         return address;
     }
@@ -24,5 +24,26 @@ package fr.fdesousa.bikesharinghub.models;
  * Station status
  */
 public enum StationStatus {
-    OPEN, CLOSED
+    OPEN(0), CLOSED(1);
+
+    /* Stored in the database, must not change */
+    private final int code;
+
+    StationStatus(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /* Null for an unknown code */
+    public static StationStatus fromCode(int code) {
+        for (StationStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        return null;
+    }
 }
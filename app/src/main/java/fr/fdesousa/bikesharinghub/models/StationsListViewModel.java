@@ -22,31 +22,46 @@ import android.app.Application;
 import androidx.lifecycle.AndroidViewModel;
 
 import java.util.ArrayList;
+import java.util.List;
 
-import fr.fdesousa.bikesharinghub.db.StationsDataSource;
+import fr.fdesousa.bikesharinghub.db.AsyncStationsDataSource;
+import fr.fdesousa.bikesharinghub.db.DatabaseExecutor;
+import fr.fdesousa.bikesharinghub.db.StationRepository;
 
+/* Stations are loaded in the background, callbacks are called on the main thread */
 public class StationsListViewModel extends AndroidViewModel {
 
-    private ArrayList<Station> stations;
-    private StationsDataSource stationsDataSource;
+    private ArrayList<Station> favoriteStations;
+    private StationRepository stationRepository;
+    private AsyncStationsDataSource stationsDataSource;
 
     public StationsListViewModel(Application application) {
         super(application);
-        stationsDataSource = new StationsDataSource(application);
+        stationRepository = StationRepository.getInstance(application);
+        stationsDataSource = new AsyncStationsDataSource(application);
     }
 
-    public ArrayList<Station> getStations() {
-        if(stations == null) {
-            stations = stationsDataSource.getStations();
-        }
-        return stations;
-   }
+    public void getStations(DatabaseExecutor.Callback<List<Station>> callback) {
+        stationRepository.getStations(callback);
+    }
 
-    public ArrayList<Station> getFavoriteStations() {
-        if(stations == null) {
-            stations = stationsDataSource.getFavoriteStations();
+    public void getFavoriteStations(final DatabaseExecutor.Callback<List<Station>> callback) {
+        if(favoriteStations != null) {
+            callback.onResult(favoriteStations);
+            return;
         }
-        return stations;
-   }
+        stationsDataSource.getFavoriteStations(new DatabaseExecutor.Callback<ArrayList<Station>>() {
+            @Override
+            public void onResult(ArrayList<Station> stations) {
+                favoriteStations = stations;
+                callback.onResult(stations);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                callback.onError(e);
+            }
+        });
+    }
 
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.overlays;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.HashMap;
+
+import fr.fdesousa.bikesharinghub.R;
+
+/**
+ * Station marker icons, drawn once for each visual state and shared by all the stations in
+ * this state.
+ *
+ * The state of a marker is made of its text (free bikes count or "!" for outdated data), its
+ * gauge filling, rounded to FILL_STEPS steps, and whether it is crossed out.
+ *
+ * Icons are packed in atlas pages of ATLAS_SIZE x ATLAS_SIZE icons and identified by their
+ * slot. Pages are small and added on demand, as a map usually shows a few dozen distinct
+ * icons. Icons may be requested from any thread while the UI thread draws them: pages are only
+ * accessed under the lock of the cache.
+ */
+public class StationIconCache {
+    private static final int FILL_STEPS = 36;
+    /* 4 x 4 icons of 94 x 94 px in xxhdpi make a page of about 550 KB */
+    private static final int ATLAS_SIZE = 4;
+    private static final int ATLAS_SLOTS = ATLAS_SIZE * ATLAS_SIZE;
+
+    private static final int FLAG_EMPTY_CIRCLE = 1;
+    private static final int FLAG_CROSSED = 1 << 1;
+    private static final int FLAG_EMPTY_SLOTS = 1 << 2;
+    private static final int TEXT_NONE = -2;
+    private static final int TEXT_OUTDATED = -1;
+
+    private final Resources mResources;
+    private final Drawable mMarkerDrawable;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mBikeColor;
+    private final Paint mPaint = new Paint();
+    private final Paint mTextPaint = new Paint();
+    private final HashMap<Long, Integer> mIconIds = new HashMap<>();
+    private final Rect mSrc = new Rect();
+    private final RectF mDst = new RectF();
+    private Bitmap[] mPages = new Bitmap[0];
+    private Canvas mPageCanvas;
+
+    public StationIconCache(Context context) {
+        mResources = context.getResources();
+        mMarkerDrawable = ContextCompat.getDrawable(context, R.drawable.ic_station_marker);
+        mWidth = mMarkerDrawable.getIntrinsicWidth();
+        mHeight = mMarkerDrawable.getIntrinsicHeight();
+        mMarkerDrawable.setBounds(0, 0, mWidth, mHeight);
+        mBikeColor = mResources.getColor(R.color.bike_red);
+        mTextPaint.setColor(Color.BLACK);
+        mTextPaint.setTextSize(15 * mResources.getDisplayMetrics().density);
+        mTextPaint.setFakeBoldText(true);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+        mTextPaint.setAntiAlias(true);
+    }
+
+    /* Icon of a station, outdated stations display "!" instead of their free bikes count */
+    public int getIconId(int freeBikes, int emptySlots, boolean closed, boolean outdated) {
+        int flags = 0;
+        int fillStep = 0;
+        int text;
+        if (freeBikes == 0 || closed) {
+            flags |= FLAG_EMPTY_CIRCLE;
+        } else {
+            float freeBikesRatio = (float) freeBikes / (float) (freeBikes + emptySlots);
+            if (freeBikesRatio < 1.0) {
+                /* A partial gauge never looks empty nor full */
+                fillStep = Math.min(FILL_STEPS - 1, Math.max(1, Math.round(freeBikesRatio * FILL_STEPS)));
+            } else {
+                fillStep = FILL_STEPS;
+            }
+            if (emptySlots > 0) {
+                flags |= FLAG_EMPTY_SLOTS;
+            }
+        }
+        if ((emptySlots == 0 && freeBikes == 0) || closed) {
+            flags |= FLAG_CROSSED;
+            text = TEXT_NONE;
+        } else {
+            text = outdated ? TEXT_OUTDATED : freeBikes;
+        }
+        return getIconId(text, fillStep, flags);
+    }
+
+    /* Draw an icon centered on the given point, never while a new icon is drawn in its page */
+    public synchronized void drawIcon(Canvas canvas, int iconId, float x, float y) {
+        int slot = iconId % ATLAS_SLOTS;
+        int left = (slot % ATLAS_SIZE) * mWidth;
+        int top = (slot / ATLAS_SIZE) * mHeight;
+        mSrc.set(left, top, left + mWidth, top + mHeight);
+        mDst.set(x - mWidth / 2f, y - mHeight / 2f, x + mWidth / 2f, y + mHeight / 2f);
+        canvas.drawBitmap(mPages[iconId / ATLAS_SLOTS], mSrc, mDst, null);
+    }
+
+    public int getIconWidth() {
+        return mWidth;
+    }
+
+    public int getIconHeight() {
+        return mHeight;
+    }
+
+    private synchronized int getIconId(int text, int fillStep, int flags) {
+        long key = ((long) (text - TEXT_NONE) << 16) | (fillStep << 8) | flags;
+        Integer iconId = mIconIds.get(key);
+        if (iconId == null) {
+            iconId = mIconIds.size();
+            int slot = iconId % ATLAS_SLOTS;
+            if (slot == 0) {
+                Bitmap page = Bitmap.createBitmap(ATLAS_SIZE * mWidth, ATLAS_SIZE * mHeight,
+                        Bitmap.Config.ARGB_8888);
+                mPageCanvas = new Canvas(page);
+                Bitmap[] pages = new Bitmap[mPages.length + 1];
+                System.arraycopy(mPages, 0, pages, 0, mPages.length);
+                pages[mPages.length] = page;
+                mPages = pages;
+            }
+            int left = (slot % ATLAS_SIZE) * mWidth;
+            int top = (slot / ATLAS_SIZE) * mHeight;
+            mPageCanvas.save();
+            mPageCanvas.clipRect(left, top, left + mWidth, top + mHeight);
+            mPageCanvas.translate(left, top);
+            drawIcon(mPageCanvas, text, fillStep, flags);
+            mPageCanvas.restore();
+            mIconIds.put(key, iconId);
+        }
+        return iconId;
+    }
+
+    private void drawIcon(Canvas canvas, int text, int fillStep, int flags) {
+        mPaint.reset();
+
+        if ((flags & FLAG_EMPTY_CIRCLE) != 0) {
+            mPaint.setColor(Color.WHITE);
+            canvas.drawCircle(0.5f * mWidth, 0.5f * mHeight, mHeight / 2f, mPaint);
+        } else {
+            float sweepAngle;
+            if (fillStep < FILL_STEPS) {
+                sweepAngle = 360f * fillStep / FILL_STEPS;
+            } else {
+                sweepAngle = 362f; //need to overwrite 1 degre taken for each edge
+            }
+            RectF oval = new RectF(0, 0, mWidth, mHeight);
+            RectF ovalInt = new RectF(0.1f * mWidth, 0.1f * mHeight, mWidth * 0.9f, mHeight * 0.9f);
+            mPaint.setColor(mBikeColor);
+            //fill in the gauge
+            canvas.drawArc(oval, -88, sweepAngle - 3, true, mPaint);
+            mPaint.setColor(Color.BLACK);
+            //inner contour of the gauge
+            canvas.drawArc(ovalInt, -88, sweepAngle - 3, true, mPaint);
+            if ((flags & FLAG_EMPTY_SLOTS) != 0) {
+                //edges of jauge
+                canvas.drawArc(oval, -91, 2, true, mPaint);
+                canvas.drawArc(oval, -90 + sweepAngle - 2, 3, true, mPaint);
+                //fill what's left of the gauge
+                mPaint.setColor(Color.WHITE);
+                canvas.drawArc(oval, -90 + sweepAngle + 1, 360 - sweepAngle - 2, true, mPaint);
+            }
+            //inside circle
+            mPaint.setColor(Color.WHITE);
+            canvas.drawCircle(0.5f * mWidth, 0.5f * mHeight, mHeight / 2.65f, mPaint);
+        }
+
+        if ((flags & FLAG_CROSSED) != 0) {
+            mPaint.setColor(Color.BLACK);
+            mPaint.setStrokeWidth(4);
+            canvas.drawLine(0.15f * mWidth, 0.15f * mHeight, 0.85f * mWidth, 0.85f * mHeight, mPaint);
+            canvas.drawLine(0.15f * mWidth, 0.85f * mHeight, 0.85f * mWidth, 0.15f * mHeight, mPaint);
+        } else if (text != TEXT_NONE) {
+            int textHeight = (int) (mTextPaint.descent() + mTextPaint.ascent());
+            canvas.drawText(text == TEXT_OUTDATED ? "!" : String.valueOf(text),
+                    0.5f * mWidth, 0.5f * mHeight - textHeight / 2, mTextPaint);
+        }
+        mMarkerDrawable.draw(canvas);
+    }
+}
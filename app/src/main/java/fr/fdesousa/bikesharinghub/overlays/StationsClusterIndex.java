@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.overlays;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical clustering of the stations, computed once for all the zoom levels.
+ *
+ * Stations are projected on the Web Mercator plane, then each zoom level is built from the
+ * level below it: every point not yet clustered absorbs the not yet clustered points within
+ * the cluster radius, as supercluster does. Points of each level are sorted by grid cell, so
+ * that the clusters of any bounding box are found with a binary search per grid row.
+ */
+public class StationsClusterIndex {
+    private final int mMinZoom;
+    private final int mMaxZoom;
+    private final Level[] mLevels;
+
+    /**
+     * @param radius cluster radius, in pixels
+     * @param tileSize size of a map tile, in pixels
+     */
+    public StationsClusterIndex(double[] latitudes, double[] longitudes, int minZoom, int maxZoom,
+                                double radius, double tileSize) {
+        mMinZoom = minZoom;
+        mMaxZoom = maxZoom;
+        mLevels = new Level[maxZoom - minZoom + 2];
+
+        /* Stations alone, displayed beyond the max zoom */
+        int count = latitudes.length;
+        Level leaves = new Level(count, getRadius(radius, tileSize, maxZoom + 1));
+        for (int i = 0; i < count; i++) {
+            leaves.add(longitudeToX(longitudes[i]), latitudeToY(latitudes[i]), 1, i, -1);
+        }
+        leaves.sort();
+        mLevels[mLevels.length - 1] = leaves;
+
+        for (int zoom = maxZoom; zoom >= minZoom; zoom--) {
+            Level children = mLevels[zoom - minZoom + 1];
+            Level level = cluster(children, getRadius(radius, tileSize, zoom));
+            level.sort();
+            mLevels[zoom - minZoom] = level;
+        }
+    }
+
+    public int getMinZoom() {
+        return mMinZoom;
+    }
+
+    public int getMaxZoom() {
+        return mMaxZoom;
+    }
+
+    /**
+     * Clusters displayed at the given zoom within the bounding box. Zoom levels above the max
+     * zoom only have single stations.
+     */
+    public void getClusters(double north, double east, double south, double west, int zoom,
+                            Clusters result) {
+        int levelZoom = Math.max(mMinZoom, Math.min(mMaxZoom + 1, zoom));
+        Level level = mLevels[levelZoom - mMinZoom];
+        result.reset(this, level, levelZoom);
+        double minY = latitudeToY(north);
+        double maxY = latitudeToY(south);
+        if (east - west >= 360) {
+            level.query(0, minY, 1, maxY, result);
+        } else {
+            double minX = longitudeToX(normalizeLongitude(west));
+            double maxX = longitudeToX(normalizeLongitude(east));
+            if (minX <= maxX) {
+                level.query(minX, minY, maxX, maxY, result);
+            } else {
+                /* Across the antimeridian */
+                level.query(minX, minY, 1, maxY, result);
+                level.query(0, minY, maxX, maxY, result);
+            }
+        }
+    }
+
+    /* Zoom at which the cluster splits into several clusters or stations */
+    int getExpansionZoom(int zoom, int index) {
+        while (zoom <= mMaxZoom && mLevels[zoom - mMinZoom].single[index] != -1) {
+            index = mLevels[zoom - mMinZoom].single[index];
+            zoom++;
+        }
+        return Math.min(zoom + 1, mMaxZoom + 1);
+    }
+
+    private static double getRadius(double radius, double tileSize, int zoom) {
+        return radius / (tileSize * Math.pow(2, zoom));
+    }
+
+    private static Level cluster(Level children, double radius) {
+        Level level = new Level(children.size, radius);
+        double radiusSquared = radius * radius;
+        int[] neighbors = new int[16];
+        for (int i = 0; i < children.size; i++) {
+            if (children.parent[i] != -1) {
+                continue;
+            }
+            int parent = level.size;
+            children.parent[i] = parent;
+            double x = children.x[i];
+            double y = children.y[i];
+            double weightedX = x * children.count[i];
+            double weightedY = y * children.count[i];
+            int count = children.count[i];
+            boolean merged = false;
+            int neighborsCount = children.query(x - radius, y - radius, x + radius, y + radius, neighbors);
+            if (neighborsCount > neighbors.length) {
+                neighbors = new int[neighborsCount * 2];
+                neighborsCount = children.query(x - radius, y - radius, x + radius, y + radius, neighbors);
+            }
+            for (int k = 0; k < neighborsCount; k++) {
+                int j = neighbors[k];
+                if (children.parent[j] != -1) {
+                    continue;
+                }
+                double dx = children.x[j] - x;
+                double dy = children.y[j] - y;
+                if (dx * dx + dy * dy <= radiusSquared) {
+                    children.parent[j] = parent;
+                    weightedX += children.x[j] * children.count[j];
+                    weightedY += children.y[j] * children.count[j];
+                    count += children.count[j];
+                    merged = true;
+                }
+            }
+            if (merged) {
+                level.add(weightedX / count, weightedY / count, count, -1, -1);
+            } else {
+                level.add(x, y, count, children.station[i], i);
+            }
+        }
+        return level;
+    }
+
+    private static double normalizeLongitude(double longitude) {
+        while (longitude < -180) longitude += 360;
+        while (longitude > 180) longitude -= 360;
+        return longitude;
+    }
+
+    static double longitudeToX(double longitude) {
+        return longitude / 360 + 0.5;
+    }
+
+    static double latitudeToY(double latitude) {
+        double sin = Math.sin(Math.toRadians(latitude));
+        double y = 0.5 - 0.25 * Math.log((1 + sin) / (1 - sin)) / Math.PI;
+        return y < 0 ? 0 : y > 1 ? 1 : y;
+    }
+
+    static double xToLongitude(double x) {
+        return (x - 0.5) * 360;
+    }
+
+    static double yToLatitude(double y) {
+        double y2 = (180 - y * 360) * Math.PI / 180;
+        return 360 * Math.atan(Math.exp(y2)) / Math.PI - 90;
+    }
+
+    /* Clusters of a zoom level, as parallel arrays sorted by grid cell */
+    private static class Level {
+        final double cellSize;
+        final long columns;
+        int size = 0;
+        double[] x;
+        double[] y;
+        int[] count;
+        int[] station;  //station index, or -1 for a cluster of several stations
+        int[] single;   //index of the only child in the level below, or -1
+        int[] parent;   //index of the cluster in the level above, or -1
+        long[] cells;
+        int[] sorted;
+
+        Level(int capacity, double cellSize) {
+            this.cellSize = cellSize;
+            columns = (long) Math.ceil(1 / cellSize) + 1;
+            x = new double[capacity];
+            y = new double[capacity];
+            count = new int[capacity];
+            station = new int[capacity];
+            single = new int[capacity];
+        }
+
+        void add(double x, double y, int count, int station, int single) {
+            this.x[size] = x;
+            this.y[size] = y;
+            this.count[size] = count;
+            this.station[size] = station;
+            this.single[size] = single;
+            size++;
+        }
+
+        long getColumn(double x) {
+            return Math.max(0, Math.min(columns - 1, (long) Math.floor(x / cellSize)));
+        }
+
+        void sort() {
+            x = Arrays.copyOf(x, size);
+            y = Arrays.copyOf(y, size);
+            count = Arrays.copyOf(count, size);
+            station = Arrays.copyOf(station, size);
+            single = Arrays.copyOf(single, size);
+            parent = new int[size];
+            cells = new long[size];
+            sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                parent[i] = -1;
+                cells[i] = getColumn(y[i]) * columns + getColumn(x[i]);
+                sorted[i] = i;
+            }
+            heapSort(cells, sorted, size);
+        }
+
+        /* Indexes of the points in the box, the returned count may exceed the result capacity */
+        int query(double minX, double minY, double maxX, double maxY, int[] result) {
+            int found = 0;
+            long minColumn = getColumn(minX);
+            long maxColumn = getColumn(maxX);
+            for (long row = getColumn(minY); row <= getColumn(maxY); row++) {
+                int k = lowerBound(cells, size, row * columns + minColumn);
+                long lastCell = row * columns + maxColumn;
+                for (; k < size && cells[k] <= lastCell; k++) {
+                    int i = sorted[k];
+                    if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY) {
+                        if (found < result.length) {
+                            result[found] = i;
+                        }
+                        found++;
+                    }
+                }
+            }
+            return found;
+        }
+
+        void query(double minX, double minY, double maxX, double maxY, Clusters result) {
+            long minColumn = getColumn(minX);
+            long maxColumn = getColumn(maxX);
+            for (long row = getColumn(minY); row <= getColumn(maxY); row++) {
+                int k = lowerBound(cells, size, row * columns + minColumn);
+                long lastCell = row * columns + maxColumn;
+                for (; k < size && cells[k] <= lastCell; k++) {
+                    int i = sorted[k];
+                    if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY) {
+                        result.add(i);
+                    }
+                }
+            }
+        }
+
+        private static int lowerBound(long[] values, int size, long value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[middle] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /* Sort the keys along with their companion values, without allocating */
+        private static void heapSort(long[] keys, int[] values, int size) {
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(keys, values, i, size);
+            }
+            for (int end = size - 1; end > 0; end--) {
+                swap(keys, values, 0, end);
+                siftDown(keys, values, 0, end);
+            }
+        }
+
+        private static void siftDown(long[] keys, int[] values, int root, int size) {
+            while (2 * root + 1 < size) {
+                int child = 2 * root + 1;
+                if (child + 1 < size && keys[child + 1] > keys[child]) {
+                    child++;
+                }
+                if (keys[root] >= keys[child]) {
+                    return;
+                }
+                swap(keys, values, root, child);
+                root = child;
+            }
+        }
+
+        private static void swap(long[] keys, int[] values, int i, int j) {
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    /**
+     * Result of a query, meant to be reused from one query to the next.
+     */
+    public static class Clusters {
+        private StationsClusterIndex mIndex;
+        private Level mLevel;
+        private int mZoom;
+        private int[] mIndexes = new int[64];
+        private int mSize = 0;
+
+        void reset(StationsClusterIndex index, Level level, int zoom) {
+            mIndex = index;
+            mLevel = level;
+            mZoom = zoom;
+            mSize = 0;
+        }
+
+        void add(int index) {
+            if (mSize == mIndexes.length) {
+                int[] indexes = new int[mSize * 2];
+                System.arraycopy(mIndexes, 0, indexes, 0, mSize);
+                mIndexes = indexes;
+            }
+            mIndexes[mSize++] = index;
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        public double getLatitude(int i) {
+            return yToLatitude(mLevel.y[mIndexes[i]]);
+        }
+
+        public double getLongitude(int i) {
+            return xToLongitude(mLevel.x[mIndexes[i]]);
+        }
+
+        /* Number of stations in the cluster */
+        public int getCount(int i) {
+            return mLevel.count[mIndexes[i]];
+        }
+
+        /* Index of the station if the cluster is a single station, -1 otherwise */
+        public int getStationIndex(int i) {
+            return mLevel.station[mIndexes[i]];
+        }
+
+        /* Zoom at which the cluster splits */
+        public int getExpansionZoom(int i) {
+            return mIndex.getExpansionZoom(mZoom, mIndexes[i]);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.overlays;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.graphics.RectF;
+import android.view.View;
+
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.Projection;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Availability of the stations rasterized on a coarse grid, drawn instead of the clusters at
+ * low zoom levels. Each cell is tinted from gray (no bike) to the bike color (no empty slot),
+ * and is more opaque as it holds more docks.
+ *
+ * The raster covers twice the viewport and is only rebuilt when the zoom level changes or the
+ * viewport leaves it: in between, panning and pinching just stretch the same bitmap. Rasters
+ * are built on a background executor, the last finished one is drawn until the next is ready.
+ */
+class StationsDensityLayer {
+    private static final float AREA_SCALE = 2f;
+    private static final int MAX_CELLS = 256;
+    private static final int SATURATION_DOCKS = 60;
+    private static final int MIN_ALPHA = 96;
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    private final View mView;
+    private final Executor mExecutor;
+    private final int mCellSize;
+    private final int mBikeColor;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final GeoPoint mGeoPoint = new GeoPoint(0.0, 0.0);
+    private final Point mPoint = new Point();
+    private final Point mOrigin = new Point();
+    private final RectF mDst = new RectF();
+    /* Only used from the executor */
+    private final StationsClusterIndex.Clusters mStations = new StationsClusterIndex.Clusters();
+    private StationsClusterIndex mIndex;
+    private int[] mFreeBikes;
+    private int[] mEmptySlots;
+    private Raster mRaster;
+    private BoundingBox mRequestedArea;
+    private int mRequestedZoom;
+    private volatile int mGeneration = 0;
+
+    /* Cells of an area at a zoom level, never modified once built */
+    private static class Raster {
+        final BoundingBox area;
+        final int columns;
+        final int rows;
+        final Bitmap bitmap;
+        final boolean[] hasStations;
+
+        Raster(BoundingBox area, int columns, int rows, Bitmap bitmap, boolean[] hasStations) {
+            this.area = area;
+            this.columns = columns;
+            this.rows = rows;
+            this.bitmap = bitmap;
+            this.hasStations = hasStations;
+        }
+    }
+
+    /* The view is invalidated each time a new raster is ready */
+    StationsDensityLayer(View view, Executor executor, int cellSize, int bikeColor) {
+        mView = view;
+        mExecutor = executor;
+        mCellSize = cellSize;
+        mBikeColor = bikeColor;
+    }
+
+    void setStations(StationsClusterIndex index, int[] freeBikes, int[] emptySlots) {
+        mIndex = index;
+        mFreeBikes = freeBikes;
+        mEmptySlots = emptySlots;
+        mRequestedArea = null;
+    }
+
+    void draw(Canvas canvas, Projection projection) {
+        if (mIndex == null) {
+            return;
+        }
+        int zoom = (int) Math.floor(projection.getZoomLevel());
+        BoundingBox viewport = projection.getBoundingBox();
+        if (mRequestedArea == null || zoom != mRequestedZoom || !contains(mRequestedArea, viewport)) {
+            requestRaster(projection, zoom, getArea(viewport));
+        }
+        Raster raster = mRaster;
+        if (raster == null) {
+            return;
+        }
+        toPixels(projection, raster.area.getLatNorth(), raster.area.getLonWest(), mOrigin);
+        toPixels(projection, raster.area.getLatSouth(), raster.area.getLonEast(), mPoint);
+        mDst.set(mOrigin.x, mOrigin.y, mPoint.x, mPoint.y);
+        canvas.drawBitmap(raster.bitmap, null, mDst, mPaint);
+    }
+
+    /* Whether some station lies under the given screen point */
+    boolean hasStationsAt(Projection projection, float x, float y) {
+        Raster raster = mRaster;
+        if (raster == null) {
+            return false;
+        }
+        toPixels(projection, raster.area.getLatNorth(), raster.area.getLonWest(), mOrigin);
+        toPixels(projection, raster.area.getLatSouth(), raster.area.getLonEast(), mPoint);
+        int column = (int) ((x - mOrigin.x) * raster.columns / (mPoint.x - mOrigin.x));
+        int row = (int) ((y - mOrigin.y) * raster.rows / (mPoint.y - mOrigin.y));
+        return column >= 0 && column < raster.columns && row >= 0 && row < raster.rows
+                && raster.hasStations[row * raster.columns + column];
+    }
+
+    /* The projection only gives the size of the area on screen, stations are placed in Mercator */
+    private void requestRaster(Projection projection, int zoom, final BoundingBox area) {
+        mRequestedArea = area;
+        mRequestedZoom = zoom;
+        toPixels(projection, area.getLatNorth(), area.getLonWest(), mOrigin);
+        toPixels(projection, area.getLatSouth(), area.getLonEast(), mPoint);
+        final int width = mPoint.x - mOrigin.x;
+        final int height = mPoint.y - mOrigin.y;
+        final int generation = ++mGeneration;
+        final StationsClusterIndex index = mIndex;
+        final int[] freeBikes = mFreeBikes;
+        final int[] emptySlots = mEmptySlots;
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    /* A later request replaced this one */
+                    if (generation != mGeneration) {
+                        return;
+                    }
+                    final Raster raster = rasterize(index, freeBikes, emptySlots, area, width, height);
+                    mView.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (generation == mGeneration) {
+                                mRaster = raster;
+                                mView.invalidate();
+                            }
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            /* The map is being destroyed */
+        }
+    }
+
+    /* Null if the area is empty on screen */
+    private Raster rasterize(StationsClusterIndex index, int[] freeBikes, int[] emptySlots,
+                             BoundingBox area, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        float cellSize = Math.max(mCellSize, (float) Math.max(width, height) / MAX_CELLS);
+        int columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        int rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        int cells = columns * rows;
+        int[] bikes = new int[cells];
+        int[] docks = new int[cells];
+        boolean[] hasStations = new boolean[cells];
+        double west = StationsClusterIndex.longitudeToX(area.getLonWest());
+        double east = StationsClusterIndex.longitudeToX(area.getLonEast());
+        double north = StationsClusterIndex.latitudeToY(area.getLatNorth());
+        double south = StationsClusterIndex.latitudeToY(area.getLatSouth());
+
+        /* Single stations, whatever the zoom */
+        index.getClusters(area.getLatNorth(), area.getLonEast(), area.getLatSouth(),
+                area.getLonWest(), Integer.MAX_VALUE, mStations);
+        for (int i = 0; i < mStations.size(); i++) {
+            double x = StationsClusterIndex.longitudeToX(mStations.getLongitude(i));
+            double y = StationsClusterIndex.latitudeToY(mStations.getLatitude(i));
+            int column = (int) ((x - west) * columns / (east - west));
+            int row = (int) ((y - north) * rows / (south - north));
+            if (column < 0 || column >= columns || row < 0 || row >= rows) {
+                continue;
+            }
+            int cell = row * columns + column;
+            int station = mStations.getStationIndex(i);
+            /* Empty slots are -1 when unknown */
+            bikes[cell] += freeBikes[station];
+            docks[cell] += freeBikes[station] + Math.max(0, emptySlots[station]);
+            hasStations[cell] = true;
+        }
+
+        int[] pixels = new int[cells];
+        for (int i = 0; i < cells; i++) {
+            pixels[i] = hasStations[i] ? getCellColor(bikes[i], docks[i]) : Color.TRANSPARENT;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(columns, rows, Bitmap.Config.ARGB_8888);
+        bitmap.setPixels(pixels, 0, columns, 0, 0, columns, rows);
+        return new Raster(area, columns, rows, bitmap, hasStations);
+    }
+    private int getCellColor(int bikes, int docks) {
+        float ratio = docks == 0 ? 0f : (float) bikes / docks;
+        int alpha = MIN_ALPHA + (255 - MIN_ALPHA) * Math.min(docks, SATURATION_DOCKS) / SATURATION_DOCKS;
+        return Color.argb(alpha,
+                blend(Color.red(Color.DKGRAY), Color.red(mBikeColor), ratio),
+                blend(Color.green(Color.DKGRAY), Color.green(mBikeColor), ratio),
+                blend(Color.blue(Color.DKGRAY), Color.blue(mBikeColor), ratio));
+    }
+
+    private static int blend(int from, int to, float ratio) {
+        return (int) (from + (to - from) * ratio);
+    }
+
+    /* Area around the viewport, not wrapped around the antimeridian */
+    private static BoundingBox getArea(BoundingBox viewport) {
+        double latMargin = viewport.getLatitudeSpan() * (AREA_SCALE - 1) / 2;
+        double north = Math.min(MAX_LATITUDE, viewport.getLatNorth() + latMargin);
+        double south = Math.max(-MAX_LATITUDE, viewport.getLatSouth() - latMargin);
+        double west = -180;
+        double east = 180;
+        if (viewport.getLonWest() <= viewport.getLonEast()) {
+            double lonMargin = (viewport.getLonEast() - viewport.getLonWest()) * (AREA_SCALE - 1) / 2;
+            west = Math.max(west, viewport.getLonWest() - lonMargin);
+            east = Math.min(east, viewport.getLonEast() + lonMargin);
+        }
+        return new BoundingBox(north, east, south, west);
+    }
+
+    private static boolean contains(BoundingBox area, BoundingBox viewport) {
+        boolean wrapped = viewport.getLonWest() > viewport.getLonEast();
+        return viewport.getLatNorth() <= area.getLatNorth() && viewport.getLatSouth() >= area.getLatSouth()
+                && (wrapped ? area.getLonWest() == -180 && area.getLonEast() == 180
+                        : viewport.getLonWest() >= area.getLonWest() && viewport.getLonEast() <= area.getLonEast());
+    }
+
+    private void toPixels(Projection projection, double latitude, double longitude, Point point) {
+        mGeoPoint.setCoords(latitude, longitude);
+        projection.toPixels(mGeoPoint, point);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.overlays;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.view.MotionEvent;
+
+import org.osmdroid.api.IGeoPoint;
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Overlay;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Draw all the stations of a StationsClusterIndex in a single pass: clusters of several
+ * stations with their count, single stations with their icon from the StationIconCache atlas.
+ * Up to the density max zoom, a StationsDensityLayer is drawn instead. The selected station is
+ * always drawn, on top of the others.
+ *
+ * Taps are looked up in the index: a tap on a cluster zooms in until it splits, a tap on a
+ * station is reported to the OnStationTapListener. A tap on the density layer zooms in past
+ * the density max zoom.
+ */
+public class StationsOverlay extends Overlay {
+    private final StationIconCache mIconCache;
+    private final Bitmap mClusterIcon;
+    private final Paint mTextPaint = new Paint();
+    private final StationsDensityLayer mDensityLayer;
+    private final StationsClusterIndex.Clusters mClusters = new StationsClusterIndex.Clusters();
+    private final GeoPoint mGeoPoint = new GeoPoint(0.0, 0.0);
+    private final Point mPoint = new Point();
+    private StationsClusterIndex mIndex;
+    private int[] mIconIds;
+    private OnStationTapListener mListener;
+    private int mDensityMaxZoom = -1;
+    private boolean mHasSelection = false;
+    private int mSelectedIndex;
+    private double mSelectedLatitude;
+    private double mSelectedLongitude;
+    private int mSelectedIconId;
+
+    public interface OnStationTapListener {
+        /* Index of the station in the StationsClusterIndex */
+        boolean onStationTap(int stationIndex);
+
+        boolean onSelectedStationTap();
+    }
+
+    /* The density layer is built with the executor, and the map invalidated once it is ready */
+    public StationsOverlay(MapView mapView, Executor executor, StationIconCache iconCache, Bitmap clusterIcon,
+                           int bikeColor, float density) {
+        mIconCache = iconCache;
+        mClusterIcon = clusterIcon;
+        mDensityLayer = new StationsDensityLayer(mapView, executor, (int) (8 * density), bikeColor);
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextSize(15 * density);
+        mTextPaint.setFakeBoldText(true);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+        mTextPaint.setAntiAlias(true);
+    }
+
+    /* Icons and availability of the stations, in the order of the index */
+    public void setStations(StationsClusterIndex index, int[] iconIds, int[] freeBikes, int[] emptySlots) {
+        mIndex = index;
+        mIconIds = iconIds;
+        mDensityLayer.setStations(index, freeBikes, emptySlots);
+    }
+
+    /* Highest zoom level drawn with the density layer, -1 to always draw the clusters */
+    public void setDensityMaxZoom(int zoom) {
+        mDensityMaxZoom = zoom;
+    }
+
+    public void setOnStationTapListener(OnStationTapListener listener) {
+        mListener = listener;
+    }
+
+    /* The index of the station may be -1 if it is not part of the displayed stations yet */
+    public void setSelectedStation(int stationIndex, double latitude, double longitude, int iconId) {
+        mHasSelection = true;
+        mSelectedIndex = stationIndex;
+        mSelectedLatitude = latitude;
+        mSelectedLongitude = longitude;
+        mSelectedIconId = iconId;
+    }
+
+    public void clearSelectedStation() {
+        mHasSelection = false;
+    }
+
+    @Override
+    public void draw(Canvas canvas, Projection projection) {
+        if (isDensityZoom(projection)) {
+            mDensityLayer.draw(canvas, projection);
+        } else if (mIndex != null) {
+            BoundingBox boundingBox = projection.getBoundingBox().increaseByScale(1.2f);
+            getClusters(boundingBox.getLatNorth(), boundingBox.getLonEast(),
+                    boundingBox.getLatSouth(), boundingBox.getLonWest(), projection);
+            float textOffset = (mTextPaint.descent() + mTextPaint.ascent()) / 2;
+            for (int i = 0; i < mClusters.size(); i++) {
+                toPixels(projection, mClusters.getLatitude(i), mClusters.getLongitude(i));
+                int stationIndex = mClusters.getStationIndex(i);
+                if (stationIndex == -1) {
+                    canvas.drawBitmap(mClusterIcon, mPoint.x - mClusterIcon.getWidth() / 2f,
+                            mPoint.y - mClusterIcon.getHeight() / 2f, null);
+                    canvas.drawText(String.valueOf(mClusters.getCount(i)), mPoint.x,
+                            mPoint.y - textOffset, mTextPaint);
+                } else if (!mHasSelection || stationIndex != mSelectedIndex) {
+                    mIconCache.drawIcon(canvas, mIconIds[stationIndex], mPoint.x, mPoint.y);
+                }
+            }
+        }
+        if (mHasSelection) {
+            toPixels(projection, mSelectedLatitude, mSelectedLongitude);
+            mIconCache.drawIcon(canvas, mSelectedIconId, mPoint.x, mPoint.y);
+        }
+    }
+
+    @Override
+    public boolean onSingleTapConfirmed(MotionEvent event, MapView mapView) {
+        Projection projection = mapView.getProjection();
+        float x = event.getX();
+        float y = event.getY();
+        if (mHasSelection) {
+            toPixels(projection, mSelectedLatitude, mSelectedLongitude);
+            if (isHit(x, y, mIconCache.getIconWidth(), mIconCache.getIconHeight())) {
+                return mListener != null && mListener.onSelectedStationTap();
+            }
+        }
+        if (mIndex == null) {
+            return false;
+        }
+        if (isDensityZoom(projection)) {
+            if (!mDensityLayer.hasStationsAt(projection, x, y)) {
+                return false;
+            }
+            mapView.getController().animateTo(projection.fromPixels((int) x, (int) y),
+                    (double) (mDensityMaxZoom + 1), null);
+            return true;
+        }
+
+        /* Only the clusters whose icon may contain the tap are looked up */
+        int halfWidth = Math.max(mClusterIcon.getWidth(), mIconCache.getIconWidth()) / 2 + 1;
+        int halfHeight = Math.max(mClusterIcon.getHeight(), mIconCache.getIconHeight()) / 2 + 1;
+        IGeoPoint northWest = projection.fromPixels((int) x - halfWidth, (int) y - halfHeight);
+        IGeoPoint southEast = projection.fromPixels((int) x + halfWidth, (int) y + halfHeight);
+        getClusters(northWest.getLatitude(), southEast.getLongitude(),
+                southEast.getLatitude(), northWest.getLongitude(), projection);
+        int hit = -1;
+        float hitDistance = Float.MAX_VALUE;
+        for (int i = 0; i < mClusters.size(); i++) {
+            toPixels(projection, mClusters.getLatitude(i), mClusters.getLongitude(i));
+            boolean isCluster = mClusters.getStationIndex(i) == -1;
+            int width = isCluster ? mClusterIcon.getWidth() : mIconCache.getIconWidth();
+            int height = isCluster ? mClusterIcon.getHeight() : mIconCache.getIconHeight();
+            float distance = Math.abs(x - mPoint.x) + Math.abs(y - mPoint.y);
+            if (isHit(x, y, width, height) && distance < hitDistance) {
+                hit = i;
+                hitDistance = distance;
+            }
+        }
+        if (hit == -1) {
+            return false;
+        }
+        int stationIndex = mClusters.getStationIndex(hit);
+        if (stationIndex == -1) {
+            mapView.getController().animateTo(
+                    new GeoPoint(mClusters.getLatitude(hit), mClusters.getLongitude(hit)),
+                    (double) mClusters.getExpansionZoom(hit), null);
+            return true;
+        }
+        return mListener != null && mListener.onStationTap(stationIndex);
+    }
+
+    private boolean isDensityZoom(Projection projection) {
+        return projection.getZoomLevel() < mDensityMaxZoom + 1;
+    }
+
+    private void getClusters(double north, double east, double south, double west, Projection projection) {
+        mIndex.getClusters(north, east, south, west,
+                (int) Math.floor(projection.getZoomLevel()), mClusters);
+    }
+
+    private void toPixels(Projection projection, double latitude, double longitude) {
+        mGeoPoint.setCoords(latitude, longitude);
+        projection.toPixels(mGeoPoint, mPoint);
+    }
+
+    private boolean isHit(float x, float y, int width, int height) {
+        return Math.abs(x - mPoint.x) <= width / 2f && Math.abs(y - mPoint.y) <= height / 2f;
+    }
+}
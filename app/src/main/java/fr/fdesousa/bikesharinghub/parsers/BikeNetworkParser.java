@@ -21,12 +21,21 @@
 
 package fr.fdesousa.bikesharinghub.parsers;
 
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
 import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.regex.Pattern;
 
 import fr.fdesousa.bikesharinghub.models.BikeNetwork;
 import fr.fdesousa.bikesharinghub.models.BikeNetworkLocation;
@@ -35,176 +44,476 @@ import fr.fdesousa.bikesharinghub.models.StationStatus;
 
 /**
  * Parse information on a bike network.
+ *
+ * The JSON document is read token by token, so no intermediate JSON tree is built: stations
+ * are created as soon as their object has been read.
  */
 public class BikeNetworkParser {
+    private static final Pattern STATION_ID_PREFIX = Pattern.compile("^[0-9 ]*- *");
+
     private BikeNetwork bikeNetwork;
+    private final boolean stripIdFromStationName;
 
-    public BikeNetworkParser(String toParse, boolean stripIdFromStationName) throws ParseException {
-        ArrayList<Station> stations = new ArrayList<>();
+    public BikeNetworkParser(String toParse, boolean stripIdFromStationName) throws IOException, ParseException {
+        this(new StringReader(toParse), stripIdFromStationName);
+    }
+
+    /**
+     * Parse the network directly from a stream, e.g. an HTTP response body. The stream is not
+     * closed. Failures to read the stream are thrown as is, invalid JSON as a ParseException.
+     */
+    public BikeNetworkParser(InputStream toParse, boolean stripIdFromStationName) throws IOException, ParseException {
+        this(new InputStreamReader(toParse, Charset.forName("UTF-8")), stripIdFromStationName);
+    }
+
+    public BikeNetworkParser(Reader toParse, boolean stripIdFromStationName) throws IOException, ParseException {
+        this.stripIdFromStationName = stripIdFromStationName;
+        JsonReader reader = new JsonReader(toParse);
 
         try {
-            JSONObject jsonObject = new JSONObject(toParse);
-            JSONObject rawNetwork = jsonObject.getJSONObject("network");
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("network")) {
+                    bikeNetwork = readNetwork(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new ParseException(e.getMessage(), 0);
+        }
+        if (bikeNetwork == null) {
+            throw new ParseException("No network found", 0);
+        }
+    }
 
-            /* network name & id */
-            String networkId = rawNetwork.getString("id");
-            String networkName = rawNetwork.getString("name");
-            String networkCompany = rawNetwork.getString("company");
+    public BikeNetwork getNetwork() {
+        return bikeNetwork;
+    }
 
-            /* network location */
-            BikeNetworkLocation networkLocation;
-            {
-                JSONObject rawLocation = rawNetwork.getJSONObject("location");
+    private BikeNetwork readNetwork(JsonReader reader) throws IOException, ParseException {
+        String networkId = null;
+        String networkName = null;
+        String networkCompany = "";
+        BikeNetworkLocation networkLocation = null;
+        ArrayList<Station> stations = null;
 
-                double latitude = rawLocation.getDouble("latitude");
-                double longitude = rawLocation.getDouble("longitude");
-                String city = rawLocation.getString("city");
-                String country = rawLocation.getString("country");
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                /* network name & id */
+                case "id":
+                    networkId = readString(reader);
+                    break;
+                case "name":
+                    networkName = readString(reader);
+                    break;
+                case "company":
+                    networkCompany = readCompany(reader);
+                    break;
+                /* network location */
+                case "location":
+                    networkLocation = readLocation(reader);
+                    break;
+                /* stations list */
+                case "stations":
+                    stations = readStations(reader, networkId);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
 
-                networkLocation = new BikeNetworkLocation(latitude, longitude, city, country);
+        if (networkId == null || networkName == null || networkLocation == null || stations == null) {
+            throw new ParseException("Incomplete network " + networkId, 0);
+        }
+        /* The network id may come after the stations list */
+        for (Station station : stations) {
+            if (station.getNetworkId() == null) {
+                station.setNetworkId(networkId);
             }
+        }
+        return new BikeNetwork(networkId, networkName, networkCompany, networkLocation, stations);
+    }
 
-            /* stations list */
-            {
-                JSONArray rawStations = rawNetwork.getJSONArray("stations");
-
-                for (int i = 0; i < rawStations.length(); i++) {
-                    JSONObject rawStation = rawStations.getJSONObject(i);
-
-                    String id = rawStation.getString("id");
-                    String name = rawStation.getString("name");
-                    if (stripIdFromStationName) name = name.replaceAll("^[0-9 ]*- *", "");
-                    String lastUpdate = rawStation.getString("timestamp");
-                    double latitude = rawStation.getDouble("latitude");
-                    double longitude = rawStation.getDouble("longitude");
-                    int freeBikes = rawStation.getInt("free_bikes");
-                    int emptySlots;
-                    if (!rawStation.isNull("empty_slots")) {
-                        emptySlots = rawStation.getInt("empty_slots");
-                    } else {
-                        emptySlots = -1;
-                    }
+    private BikeNetworkLocation readLocation(JsonReader reader) throws IOException, ParseException {
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        String city = null;
+        String country = null;
 
-                    Station station = new Station(id, name, lastUpdate, latitude, longitude,
-                            freeBikes, emptySlots, networkId);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "latitude":
+                    latitude = reader.nextDouble();
+                    break;
+                case "longitude":
+                    longitude = reader.nextDouble();
+                    break;
+                case "city":
+                    city = readString(reader);
+                    break;
+                case "country":
+                    country = readString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
 
-                    /* extra info */
-                    if (rawStation.has("extra")) {
-                        JSONObject rawExtra = rawStation.getJSONObject("extra");
+        if (Double.isNaN(latitude) || Double.isNaN(longitude) || city == null || country == null) {
+            throw new ParseException("Incomplete network location", 0);
+        }
+        return new BikeNetworkLocation(latitude, longitude, city, country);
+    }
 
-                        /* address */
-                        if (rawExtra.has("address")) {
-                            station.setAddress(rawExtra.getString("address"));
-                        } else if (rawExtra.has("description")) {
-                            station.setAddress(rawExtra.getString("description"));
-                        }
+    private ArrayList<Station> readStations(JsonReader reader, String networkId)
+            throws IOException, ParseException {
+        ArrayList<Station> stations = new ArrayList<>();
 
-                        /* banking */
-                        if (rawExtra.has("banking")) { // JCDecaux
-                            station.setBanking(rawExtra.getBoolean("banking"));
-                        } else if (rawExtra.has("payment-terminal")) {
-                            station.setBanking(rawExtra.getBoolean("payment-terminal"));
-                        } else if (rawExtra.has("ticket")) { // dublinbikes, citycycle
-                            station.setBanking(rawExtra.getBoolean("ticket"));
-                        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            stations.add(readStation(reader, networkId));
+        }
+        reader.endArray();
+        return stations;
+    }
 
-                        /* bonus */
-                        if (rawExtra.has("bonus")) {
-                            station.setBonus(rawExtra.getBoolean("bonus"));
+    private Station readStation(JsonReader reader, String networkId) throws IOException, ParseException {
+        String id = null;
+        String name = null;
+        long lastUpdate = Long.MIN_VALUE;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        int freeBikes = -1;
+        int emptySlots = -1;
+        StationExtra extra = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = readString(reader);
+                    break;
+                case "name":
+                    name = readString(reader);
+                    break;
+                case "timestamp":
+                    String timestamp = readString(reader);
+                    if (timestamp != null) {
+                        try {
+                            lastUpdate = Iso8601Parser.parse(timestamp);
+                        } catch (ParseException e) {
+                            /* shown as outdated rather than dropping the whole network */
+                            lastUpdate = 0;
                         }
+                    }
+                    break;
+                case "latitude":
+                    latitude = reader.nextDouble();
+                    break;
+                case "longitude":
+                    longitude = reader.nextDouble();
+                    break;
+                case "free_bikes":
+                    freeBikes = reader.nextInt();
+                    break;
+                case "empty_slots":
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        emptySlots = reader.nextInt();
+                    }
+                    break;
+                case "extra":
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        extra = readExtra(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
 
-                        /* status */
-                        if (rawExtra.has("status")) {
-                            JSONObject rawStatus = rawExtra.optJSONObject("status");
-                            if (rawStatus != null) {
-                                if (rawStatus.has("online")) {
-                                    if (!rawStatus.getBoolean("online")) {
-                                        station.setStatus(StationStatus.CLOSED);
-                                    } else {
-                                        station.setStatus(StationStatus.OPEN);
-                                    }
-                                }
-                            } else{
-                                String status = rawExtra.getString("status");
-                                status = status.toUpperCase();
-                                if (status.equals("CLOSED")
-                                        || status.equals("CLS")
-                                        || status.equals("1")
-                                        || status.equals("OFFLINE")
-                                        || status.equals("RÉFORMÉ")
-                                        || status.equals("PLANNED")
-                                        || status.equals("UNDER CONSTRUCTION")
-                                        || status.equals("EN MAINTENANCE")
-                                        || status.equals("IN_MAINTENANCE")
-                                        || status.equals("MAINTENANCE")
-                                        || status.equals("MAINTENANCE/IMPLEMENTATION")
-                                ) {
-                                    station.setStatus(StationStatus.CLOSED);
-                                } else {
-                                    station.setStatus(StationStatus.OPEN);
-                                }
-                            }
-                        } else if (rawExtra.has("statusValue")) {
-                            if (rawExtra.getString("statusValue").equals("Not In Service")) { // Bike Share
-                                station.setStatus(StationStatus.CLOSED);
-                            } else {
-                                station.setStatus(StationStatus.OPEN);
-                            }
-                        } else if (rawExtra.has("locked")) {
-                            if (rawExtra.getBoolean("locked")) { // bixi
-                                station.setStatus(StationStatus.CLOSED);
-                            } else {
-                                station.setStatus(StationStatus.OPEN);
-                            }
-                        } else if (rawExtra.has("open")) {
-                            if (!rawExtra.getBoolean("open")) { // dublinbikes, citycycle
-                                station.setStatus(StationStatus.CLOSED);
-                            } else {
-                                station.setStatus(StationStatus.OPEN);
-                            }
-                        } else if (rawExtra.has("online")) {
-                            if (!rawExtra.getBoolean("online")) {
-                                station.setStatus(StationStatus.CLOSED);
-                            } else {
-                                station.setStatus(StationStatus.OPEN);
-                            }
-                        } else if (rawExtra.has("installed")) {
-                            if (!rawExtra.getBoolean("installed")) {
-                                station.setStatus(StationStatus.CLOSED);
-                            } else {
-                                station.setStatus(StationStatus.OPEN);
-                            }
-                        } else if (rawExtra.has("renting") && rawExtra.has("returning") ) {
-                            Object renting = rawExtra.get("renting");
-                            Object returning = rawExtra.get("returning");
-                            if (renting instanceof Integer && returning instanceof Integer &&
-                                    (Integer) renting == 0 && (Integer) returning == 0) {
-                                station.setStatus(StationStatus.CLOSED);
-                            } else if (renting instanceof Boolean && returning instanceof Boolean &&
-                                    !((Boolean) renting) && !((Boolean) returning)) {
-                                station.setStatus(StationStatus.CLOSED);
+        if (id == null || name == null || lastUpdate == Long.MIN_VALUE
+                || Double.isNaN(latitude) || Double.isNaN(longitude) || freeBikes == -1) {
+            throw new ParseException("Incomplete station " + id, 0);
+        }
+        if (stripIdFromStationName) name = STATION_ID_PREFIX.matcher(name).replaceFirst("");
+
+        Station station = new Station(id, name, lastUpdate, latitude, longitude,
+                freeBikes, emptySlots, networkId);
+        if (extra != null) {
+            extra.applyTo(station);
+        }
+        return station;
+    }
+
+    private StationExtra readExtra(JsonReader reader) throws IOException {
+        StationExtra extra = new StationExtra();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "address":
+                    extra.address = readString(reader);
+                    break;
+                case "description":
+                    extra.description = readString(reader);
+                    break;
+                case "banking":
+                    extra.banking = readBoolean(reader);
+                    break;
+                case "payment-terminal":
+                    extra.paymentTerminal = readBoolean(reader);
+                    break;
+                case "ticket":
+                    extra.ticket = readBoolean(reader);
+                    break;
+                case "bonus":
+                    extra.bonus = readBoolean(reader);
+                    break;
+                case "status":
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        extra.hasStatusObject = true;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (reader.nextName().equals("online")) {
+                                extra.statusOnline = readBoolean(reader);
                             } else {
-                                station.setStatus(StationStatus.OPEN);
+                                reader.skipValue();
                             }
                         }
-
-                        /* electric bikes */
-                        if (rawExtra.has("ebikes")) {
-                            station.setEBikes(rawExtra.getInt("ebikes"));
-                        }
+                        reader.endObject();
+                    } else {
+                        extra.status = readString(reader);
                     }
-                    stations.add(station);
-                }
+                    break;
+                case "statusValue":
+                    extra.statusValue = readString(reader);
+                    break;
+                case "locked":
+                    extra.locked = readBoolean(reader);
+                    break;
+                case "open":
+                    extra.open = readBoolean(reader);
+                    break;
+                case "online":
+                    extra.online = readBoolean(reader);
+                    break;
+                case "installed":
+                    extra.installed = readBoolean(reader);
+                    break;
+                case "renting":
+                    extra.renting = readValue(reader);
+                    break;
+                case "returning":
+                    extra.returning = readValue(reader);
+                    break;
+                case "ebikes":
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        extra.eBikes = reader.nextInt();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
+        }
+        reader.endObject();
+        return extra;
+    }
 
-            bikeNetwork = new BikeNetwork(networkId, networkName, networkCompany, networkLocation, stations);
-        } catch (JSONException e) {
-            throw new ParseException(e.getMessage(), 0);
+    /*
+     * The company is either a single string or a list of companies: a list is kept as its JSON
+     * text, e.g. ["Company A","Company B"], as in the list of networks
+     */
+    private static String readCompany(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            String company = readString(reader);
+            return company != null ? company : "";
+        }
+        JSONArray companies = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            companies.put(readString(reader));
         }
+        reader.endArray();
+        return companies.toString();
     }
 
-    public BikeNetwork getNetwork() {
-        return bikeNetwork;
+    private static String readString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            default:
+                reader.skipValue();
+                return null;
+        }
     }
 
+    private static Boolean readBoolean(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case STRING:
+                String value = reader.nextString();
+                if (value.equalsIgnoreCase("true")) {
+                    return true;
+                } else if (value.equalsIgnoreCase("false")) {
+                    return false;
+                }
+                return null;
+            case NUMBER:
+                return reader.nextDouble() != 0;
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    /* Integer or Boolean value, as org.json would have typed it */
+    private static Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                String number = reader.nextString();
+                try {
+                    return Integer.valueOf(number);
+                } catch (NumberFormatException e) {
+                    return Double.valueOf(number);
+                }
+            case STRING:
+                return reader.nextString();
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    /**
+     * Vendor specific information on a station. Keys may come in any order, so they are
+     * gathered first and then applied with the same precedence as before.
+     */
+    private static class StationExtra {
+        String address;
+        String description;
+        Boolean banking;
+        Boolean paymentTerminal;
+        Boolean ticket;
+        Boolean bonus;
+        boolean hasStatusObject;
+        Boolean statusOnline;
+        String status;
+        String statusValue;
+        Boolean locked;
+        Boolean open;
+        Boolean online;
+        Boolean installed;
+        Object renting;
+        Object returning;
+        Integer eBikes;
+
+        void applyTo(Station station) {
+            /* address */
+            if (address != null) {
+                station.setAddress(address);
+            } else if (description != null) {
+                station.setAddress(description);
+            }
+
+            /* banking */
+            if (banking != null) { // JCDecaux
+                station.setBanking(banking);
+            } else if (paymentTerminal != null) {
+                station.setBanking(paymentTerminal);
+            } else if (ticket != null) { // dublinbikes, citycycle
+                station.setBanking(ticket);
+            }
+
+            /* bonus */
+            if (bonus != null) {
+                station.setBonus(bonus);
+            }
+
+            /* status */
+            if (hasStatusObject) {
+                if (statusOnline != null) {
+                    station.setStatus(statusOnline ? StationStatus.OPEN : StationStatus.CLOSED);
+                }
+            } else if (status != null) {
+                String upperStatus = status.toUpperCase();
+                if (upperStatus.equals("CLOSED")
+                        || upperStatus.equals("CLS")
+                        || upperStatus.equals("1")
+                        || upperStatus.equals("OFFLINE")
+                        || upperStatus.equals("RÉFORMÉ")
+                        || upperStatus.equals("PLANNED")
+                        || upperStatus.equals("UNDER CONSTRUCTION")
+                        || upperStatus.equals("EN MAINTENANCE")
+                        || upperStatus.equals("IN_MAINTENANCE")
+                        || upperStatus.equals("MAINTENANCE")
+                        || upperStatus.equals("MAINTENANCE/IMPLEMENTATION")
+                ) {
+                    station.setStatus(StationStatus.CLOSED);
+                } else {
+                    station.setStatus(StationStatus.OPEN);
+                }
+            } else if (statusValue != null) {
+                if (statusValue.equals("Not In Service")) { // Bike Share
+                    station.setStatus(StationStatus.CLOSED);
+                } else {
+                    station.setStatus(StationStatus.OPEN);
+                }
+            } else if (locked != null) { // bixi
+                station.setStatus(locked ? StationStatus.CLOSED : StationStatus.OPEN);
+            } else if (open != null) { // dublinbikes, citycycle
+                station.setStatus(open ? StationStatus.OPEN : StationStatus.CLOSED);
+            } else if (online != null) {
+                station.setStatus(online ? StationStatus.OPEN : StationStatus.CLOSED);
+            } else if (installed != null) {
+                station.setStatus(installed ? StationStatus.OPEN : StationStatus.CLOSED);
+            } else if (renting != null && returning != null) {
+                if (renting instanceof Integer && returning instanceof Integer &&
+                        (Integer) renting == 0 && (Integer) returning == 0) {
+                    station.setStatus(StationStatus.CLOSED);
+                } else if (renting instanceof Boolean && returning instanceof Boolean &&
+                        !((Boolean) renting) && !((Boolean) returning)) {
+                    station.setStatus(StationStatus.CLOSED);
+                } else {
+                    station.setStatus(StationStatus.OPEN);
+                }
+            }
+
+            /* electric bikes */
+            if (eBikes != null) {
+                station.setEBikes(eBikes);
+            }
+        }
+    }
 }
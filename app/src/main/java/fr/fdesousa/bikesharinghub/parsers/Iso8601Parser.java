@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.parsers;
+
+import java.text.ParseException;
+
+/**
+ * Parse ISO-8601 timestamps, e.g. "2022-05-14T09:26:31.123000Z", into epoch milliseconds.
+ *
+ * The date and the time are read digit by digit, so nothing is allocated unless the timestamp
+ * is invalid. Fractional seconds are kept to the millisecond, and a timestamp without offset is
+ * read in UTC.
+ */
+public final class Iso8601Parser {
+
+    private Iso8601Parser() {
+    }
+
+    public static long parse(String timestamp) throws ParseException {
+        int length = timestamp.length();
+        int year = readDigits(timestamp, 0, 4);
+        expect(timestamp, 4, '-');
+        int month = readDigits(timestamp, 5, 2);
+        expect(timestamp, 7, '-');
+        int day = readDigits(timestamp, 8, 2);
+        if (length <= 10 || (timestamp.charAt(10) != 'T' && timestamp.charAt(10) != ' ')) {
+            throw new ParseException("Invalid timestamp " + timestamp, Math.min(10, length));
+        }
+        int hour = readDigits(timestamp, 11, 2);
+        expect(timestamp, 13, ':');
+        int minute = readDigits(timestamp, 14, 2);
+        int second = 0;
+        int millis = 0;
+        int index = 16;
+        if (index < length && timestamp.charAt(index) == ':') {
+            second = readDigits(timestamp, index + 1, 2);
+            index += 3;
+            if (index < length && (timestamp.charAt(index) == '.' || timestamp.charAt(index) == ',')) {
+                index++;
+                int start = index;
+                int scale = 100;
+                while (index < length && isDigit(timestamp.charAt(index))) {
+                    millis += (timestamp.charAt(index) - '0') * scale;
+                    scale /= 10;
+                    index++;
+                }
+                if (index == start) {
+                    throw new ParseException("Invalid timestamp " + timestamp, index);
+                }
+            }
+        }
+        if (month < 1 || month > 12 || day < 1 || day > 31
+                || hour > 24 || minute > 59 || second > 60) {
+            throw new ParseException("Invalid timestamp " + timestamp, 0);
+        }
+
+        int offsetMinutes = 0;
+        if (index < length) {
+            char sign = timestamp.charAt(index);
+            if (sign == 'Z' || sign == 'z') {
+                index++;
+            } else if (sign == '+' || sign == '-') {
+                int offsetHours = readDigits(timestamp, index + 1, 2);
+                index += 3;
+                int offsetMin = 0;
+                if (index < length) {
+                    if (timestamp.charAt(index) == ':') {
+                        index++;
+                    }
+                    offsetMin = readDigits(timestamp, index, 2);
+                    index += 2;
+                }
+                offsetMinutes = offsetHours * 60 + offsetMin;
+                if (sign == '-') {
+                    offsetMinutes = -offsetMinutes;
+                }
+            }
+            if (index != length) {
+                throw new ParseException("Invalid timestamp " + timestamp, index);
+            }
+        }
+
+        long seconds = daysFromCivil(year, month, day) * 86400L
+                + hour * 3600L + (minute - offsetMinutes) * 60L + second;
+        return seconds * 1000L + millis;
+    }
+
+    /* Days since 1970-01-01 in the proleptic Gregorian calendar */
+    private static long daysFromCivil(int year, int month, int day) {
+        if (month <= 2) {
+            year--;
+        }
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468L;
+    }
+
+    private static int readDigits(String timestamp, int start, int count) throws ParseException {
+        if (start + count > timestamp.length()) {
+            throw new ParseException("Invalid timestamp " + timestamp, timestamp.length());
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = timestamp.charAt(i);
+            if (!isDigit(c)) {
+                throw new ParseException("Invalid timestamp " + timestamp, i);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void expect(String timestamp, int index, char expected) throws ParseException {
+        if (index >= timestamp.length() || timestamp.charAt(index) != expected) {
+            throw new ParseException("Invalid timestamp " + timestamp, index);
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
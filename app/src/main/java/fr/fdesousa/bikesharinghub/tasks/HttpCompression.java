@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.tasks;
+
+import android.util.Log;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Negotiate compressed responses and decode them while they are read.
+ *
+ * Once the Accept-Encoding header is set by the application, HttpURLConnection does not
+ * decompress the body anymore: the stream returned by getInputStream() handles it, and counts
+ * the bytes received against the bytes decoded.
+ */
+public class HttpCompression {
+    private static final String TAG = "HttpCompression";
+
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final int BUFFER_SIZE = 8192;
+
+    public static void requestCompression(HttpURLConnection conn) {
+        conn.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+    }
+
+    /* Decoded body of the response, the counters are logged when the stream is closed */
+    public static CountingInputStream getInputStream(HttpURLConnection conn) throws IOException {
+        String encoding = conn.getContentEncoding();
+        CountingInputStream wireInput = new CountingInputStream(conn.getInputStream(), null, null);
+        InputStream decodedInput;
+        if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+            decodedInput = new GZIPInputStream(wireInput, BUFFER_SIZE);
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            decodedInput = newDeflateInputStream(wireInput);
+        } else {
+            encoding = "identity";
+            decodedInput = wireInput;
+        }
+        return new CountingInputStream(decodedInput, wireInput,
+                conn.getURL() + " (" + encoding + ")");
+    }
+
+    /* "deflate" is meant to be zlib wrapped, but some servers send a raw deflate stream */
+    private static InputStream newDeflateInputStream(InputStream input) throws IOException {
+        PushbackInputStream pushbackInput = new PushbackInputStream(input, 2);
+        byte[] header = new byte[2];
+        int length = 0;
+        while (length < 2) {
+            int count = pushbackInput.read(header, length, 2 - length);
+            if (count == -1) {
+                break;
+            }
+            length += count;
+        }
+        pushbackInput.unread(header, 0, length);
+        int cmf = header[0] & 0xff;
+        int flg = header[1] & 0xff;
+        boolean zlibWrapped = length == 2 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        return new InflaterInputStream(pushbackInput, new Inflater(!zlibWrapped), BUFFER_SIZE);
+    }
+
+    public static class CountingInputStream extends FilterInputStream {
+        private final CountingInputStream mWireInput;
+        private final String mDescription;
+        private long mCount = 0;
+
+        CountingInputStream(InputStream input, CountingInputStream wireInput, String description) {
+            super(input);
+            mWireInput = wireInput;
+            mDescription = description;
+        }
+
+        /* Bytes read through this stream */
+        public long getCount() {
+            return mCount;
+        }
+
+        /* Bytes received from the network to produce them */
+        public long getWireCount() {
+            return mWireInput != null ? mWireInput.getCount() : mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                mCount += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = super.skip(n);
+            mCount += count;
+            return count;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (mDescription != null) {
+                Log.d(TAG, mDescription + ": " + getWireCount() + " bytes received, "
+                        + mCount + " bytes decoded");
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.tasks;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Keep the HTTP validators (ETag, Last-Modified) of the last stored response of each network,
+ * so that unchanged networks can be answered with a "304 Not Modified".
+ *
+ * Validators are only reused for the exact same request: a different API URL or station name
+ * processing must download the network again.
+ */
+public class HttpValidatorsStore {
+    private static final String PREFS_NAME = "http_validators";
+    private static final String KEY_REQUEST = "request-";
+    private static final String KEY_ETAG = "etag-";
+    private static final String KEY_LAST_MODIFIED = "last-modified-";
+
+    private SharedPreferences mPrefs;
+
+    public HttpValidatorsStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /* Turn the request into a conditional one if validators are known for it */
+    public void setRequestValidators(HttpURLConnection conn, String networkId, String request) {
+        if (!request.equals(mPrefs.getString(KEY_REQUEST + networkId, null))) {
+            return;
+        }
+        String eTag = mPrefs.getString(KEY_ETAG + networkId, null);
+        String lastModified = mPrefs.getString(KEY_LAST_MODIFIED + networkId, null);
+        if (eTag != null) {
+            conn.setRequestProperty("If-None-Match", eTag);
+        }
+        if (lastModified != null) {
+            conn.setRequestProperty("If-Modified-Since", lastModified);
+        }
+    }
+
+    public void storeValidators(String networkId, String request, String eTag, String lastModified) {
+        if (eTag == null && lastModified == null) {
+            clearValidators(networkId);
+            return;
+        }
+        SharedPreferences.Editor editor = mPrefs.edit().putString(KEY_REQUEST + networkId, request);
+        if (eTag != null) {
+            editor.putString(KEY_ETAG + networkId, eTag);
+        } else {
+            editor.remove(KEY_ETAG + networkId);
+        }
+        if (lastModified != null) {
+            editor.putString(KEY_LAST_MODIFIED + networkId, lastModified);
+        } else {
+            editor.remove(KEY_LAST_MODIFIED + networkId);
+        }
+        editor.apply();
+    }
+
+    public void clearValidators(String networkId) {
+        mPrefs.edit()
+                .remove(KEY_REQUEST + networkId)
+                .remove(KEY_ETAG + networkId)
+                .remove(KEY_LAST_MODIFIED + networkId)
+                .apply();
+    }
+}
@@ -26,21 +26,28 @@ import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import fr.fdesousa.bikesharinghub.R;
 import fr.fdesousa.bikesharinghub.db.NetworksDataSource;
+import fr.fdesousa.bikesharinghub.db.StationRepository;
+import fr.fdesousa.bikesharinghub.db.StationsChangeSet;
 import fr.fdesousa.bikesharinghub.db.StationsDataSource;
 import fr.fdesousa.bikesharinghub.models.BikeNetwork;
 import fr.fdesousa.bikesharinghub.models.DownloadResult;
@@ -54,15 +61,31 @@ public class JSONDownloadRunnable implements Runnable {
     private static final String PREF_KEY_API_URL = "pref_api_url";
     public static final String PREF_KEY_STRIP_ID_STATION = "pref_strip_id_station";
     public static final String PREF_KEY_DB_LAST_UPDATE = "db_last_update";
+    public static final int DEFAULT_MAX_PARALLEL_DOWNLOADS = 6;
+    public static final int DEFAULT_MAX_DOWNLOADS_PER_HOST = 4;
     String mError = null;
     Context mContext;
     DownloadResult mDownloadResult;
+    private int mMaxParallelDownloads = DEFAULT_MAX_PARALLEL_DOWNLOADS;
+    private int mMaxDownloadsPerHost = DEFAULT_MAX_DOWNLOADS_PER_HOST;
+    private int mCompletedDownloads;
+    private int mTotalDownloads;
 
     public JSONDownloadRunnable(Context context, DownloadResult callback) {
         mContext = context;
         mDownloadResult = callback;
     }
 
+    /* Maximum number of networks fetched at the same time */
+    public void setMaxParallelDownloads(int maxParallelDownloads) {
+        mMaxParallelDownloads = Math.max(1, maxParallelDownloads);
+    }
+
+    /* Maximum number of networks fetched at the same time from a single host */
+    public void setMaxDownloadsPerHost(int maxDownloadsPerHost) {
+        mMaxDownloadsPerHost = Math.max(1, maxDownloadsPerHost);
+    }
+
     @Override
     public void run() {
         SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(mContext);
@@ -81,65 +104,87 @@ public class JSONDownloadRunnable implements Runnable {
             mDownloadResult.onDownloadResultCallback(mError);
             return;
         }
-        JSONArray networksArray = new JSONArray();
-        for (int i=0; i<mNetworksUrl.length; i++) {
-            try {
-                StringBuilder response = new StringBuilder();
-                URL url = new URL(mNetworksUrl[i]);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                    BufferedReader input = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                    String strLine;
-                    while ((strLine = input.readLine()) != null) {
-                        response.append(strLine);
+        boolean stripId = sharedPref.getBoolean(PREF_KEY_STRIP_ID_STATION, false);
+        StationsDataSource stationHelper = new StationsDataSource(mContext);
+        HashSet<String> storedNetworksId = stationHelper.getStoredNetworksId();
+        HttpValidatorsStore validatorsStore = new HttpValidatorsStore(mContext);
+        mCompletedDownloads = 0;
+        mTotalDownloads = mNetworksUrl.length;
+        HashMap<String, Semaphore> hostsPermits = new HashMap<>();
+        ArrayList<Future<NetworkDownload>> downloads = new ArrayList<>();
+        ExecutorService downloadsExecutor = Executors.newFixedThreadPool(
+                Math.min(mMaxParallelDownloads, mNetworksUrl.length));
+        ArrayList<Station> stations = new ArrayList<>();
+        ArrayList<NetworkDownload> updatedNetworks = new ArrayList<>();
+        int fetchedNetworks = 0;
+        try {
+            for (int i = 0; i < mNetworksUrl.length; i++) {
+                try {
+                    URL url = new URL(mNetworksUrl[i]);
+                    Semaphore hostPermits = hostsPermits.get(url.getHost());
+                    if (hostPermits == null) {
+                        hostPermits = new Semaphore(mMaxDownloadsPerHost);
+                        hostsPermits.put(url.getHost(), hostPermits);
                     }
-                    input.close();
+                    /* A network missing from the database must be downloaded again in any case */
+                    NetworkDownloadCallable download = new NetworkDownloadCallable(networksId.get(i),
+                            url, hostPermits, stripId,
+                            storedNetworksId.contains(networksId.get(i)) ? validatorsStore : null);
+                    downloads.add(downloadsExecutor.submit(download));
+                } catch (MalformedURLException e) {
+                    Log.e(TAG, mNetworksUrl[i] + ": " + e.getClass().getSimpleName() + " (" + e.getMessage() + ")");
+                    onNetworkDownloadCompleted();
                 }
-                mDownloadResult.onDownloadResultCallback((int) Math.round(100.0 * (i+1) / mNetworksUrl.length)-1);
-                networksArray.put(new JSONObject(response.toString()));
-            } catch (InterruptedIOException e) {
-                return; //End up silently
-            } catch (Exception e) {
-                Log.e(TAG, mNetworksUrl[i] + ": " + e.getClass().getSimpleName() + " (" + e.getMessage() + ")");
             }
+            for (int i = 0; i < downloads.size(); i++) {
+                try {
+                    NetworkDownload download = downloads.get(i).get();
+                    if (download == null) {
+                        continue;
+                    }
+                    fetchedNetworks++;
+                    if (download.network != null) {
+                        stations.addAll(download.network.getStations());
+                        updatedNetworks.add(download);
+                    }
+                } catch (ExecutionException e) {
+                    fetchedNetworks++;
+                    mError = "Error retreiving data of network " + (i+1) + ": " + e.getCause().getMessage();
+                }
+            }
+        } catch (InterruptedException e) {
+            return; //End up silently
+        } finally {
+            downloadsExecutor.shutdownNow();
         }
-        if(networksArray.length() == 0) {
+        if(fetchedNetworks == 0) {
             mError = "Unable to fetch any response";
             mDownloadResult.onDownloadResultCallback(mError);
             return;
         }
-        String result = networksArray.toString();
-        ArrayList<Station> stations = null;
-        try {
-            JSONArray rawNetworks = new JSONArray(result);
-
-            for (int i = 0; i < rawNetworks.length(); i++) {
-                JSONObject rawNetwork = rawNetworks.getJSONObject(i);
-                try{
-                    boolean stripId = sharedPref.getBoolean(PREF_KEY_STRIP_ID_STATION, false);
-                    BikeNetworkParser bikeNetworkParser = new BikeNetworkParser(rawNetwork.toString(), stripId);
-
-                    BikeNetwork bikeNetwork = bikeNetworkParser.getNetwork();
-                    if(stations == null) {
-                        stations = bikeNetwork.getStations();
-                    } else {
-                        stations.addAll(bikeNetwork.getStations());
-                    }
-                } catch (ParseException e) {
-                    mError = "Error retreiving data of network " + (i+1) + ": " + e.getMessage();
-                }
+
+        /* Unchanged networks keep their stations, the database is only written when needed */
+        boolean hasRemovedNetworks = !networksId.containsAll(storedNetworksId);
+        if (!updatedNetworks.isEmpty() || hasRemovedNetworks) {
+            ArrayList<String> updatedNetworksId = new ArrayList<>();
+            for (NetworkDownload download : updatedNetworks) {
+                updatedNetworksId.add(download.networkId);
+            }
+            Collections.sort(stations);
+            StationsChangeSet changeSet = stationHelper.storeStations(stations, updatedNetworksId);
+            Log.d(TAG, "Stations stored: " + changeSet);
+            /* Swapped before the subscribers are told the refresh is over */
+            if (!changeSet.isEmpty()) {
+                StationRepository.getInstance(mContext).reload();
             }
-            if(stations != null) {
-                Collections.sort(stations);
-                StationsDataSource stationHelper = new StationsDataSource(mContext);
-                stationHelper.storeStations(stations);
-                sharedPref.edit()
-                        .putLong(PREF_KEY_DB_LAST_UPDATE, System.currentTimeMillis())
-                        .apply();
+            for (NetworkDownload download : updatedNetworks) {
+                validatorsStore.storeValidators(download.networkId, download.request,
+                        download.eTag, download.lastModified);
             }
-        } catch (JSONException e) {
-            mError = String.valueOf(R.string.json_error);
         }
+        sharedPref.edit()
+                .putLong(PREF_KEY_DB_LAST_UPDATE, System.currentTimeMillis())
+                .apply();
 
         Intent refreshWidgetIntent = new Intent(mContext,
                 StationsListAppWidgetProvider.class);
@@ -152,4 +197,80 @@ public class JSONDownloadRunnable implements Runnable {
             mDownloadResult.onDownloadResultCallback(100);
         }
     }
+
+    /* Progress is reported in completion order, whatever the order of the networks */
+    private synchronized void onNetworkDownloadCompleted() {
+        mCompletedDownloads++;
+        mDownloadResult.onDownloadResultCallback(
+                (int) Math.round(100.0 * mCompletedDownloads / mTotalDownloads) - 1);
+    }
+
+    /* Outcome of a network download, network is null if it has not been modified */
+    private static class NetworkDownload {
+        String networkId;
+        String request;
+        BikeNetwork network;
+        String eTag;
+        String lastModified;
+    }
+
+    private class NetworkDownloadCallable implements Callable<NetworkDownload> {
+
+        private final String mNetworkId;
+        private final URL mUrl;
+        private final Semaphore mHostPermits;
+        private final boolean mStripId;
+        private final HttpValidatorsStore mValidatorsStore;
+
+        NetworkDownloadCallable(String networkId, URL url, Semaphore hostPermits, boolean stripId,
+                                HttpValidatorsStore validatorsStore) {
+            mNetworkId = networkId;
+            mUrl = url;
+            mHostPermits = hostPermits;
+            mStripId = stripId;
+            mValidatorsStore = validatorsStore;
+        }
+
+        /* The response is parsed once, while it is received, into the network and its stations */
+        @Override
+        public NetworkDownload call() throws InterruptedException, ParseException {
+            mHostPermits.acquire();
+            try {
+                NetworkDownload download = new NetworkDownload();
+                download.networkId = mNetworkId;
+                download.request = mUrl + "|" + mStripId;
+                HttpURLConnection conn = (HttpURLConnection) mUrl.openConnection();
+                HttpCompression.requestCompression(conn);
+                if (mValidatorsStore != null) {
+                    mValidatorsStore.setRequestValidators(conn, mNetworkId, download.request);
+                }
+                int responseCode = conn.getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    conn.disconnect();
+                    return download;
+                } else if (responseCode != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("HTTP " + responseCode);
+                }
+                download.eTag = conn.getHeaderField("ETag");
+                download.lastModified = conn.getHeaderField("Last-Modified");
+                InputStream input = HttpCompression.getInputStream(conn);
+                try {
+                    download.network = new BikeNetworkParser(input, mStripId).getNetwork();
+                } finally {
+                    input.close();
+                }
+                return download;
+            } catch (ParseException e) {
+                throw e;
+            } catch (InterruptedIOException e) {
+                return null; //End up silently
+            } catch (Exception e) {
+                Log.e(TAG, mUrl + ": " + e.getClass().getSimpleName() + " (" + e.getMessage() + ")");
+                return null;
+            } finally {
+                mHostPermits.release();
+                onNetworkDownloadCompleted();
+            }
+        }
+    }
 }
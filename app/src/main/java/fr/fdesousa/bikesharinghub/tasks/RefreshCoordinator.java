@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2026 François FERREIRA DE SOUSA.
+ *
+ * This file is part of BikeSharingHub.
+ *
+ * BikeSharingHub is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BikeSharingHub is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BikeSharingHub.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.fdesousa.bikesharinghub.tasks;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.fdesousa.bikesharinghub.models.DownloadResult;
+
+/**
+ * Single entry point to refresh the stations of the saved networks.
+ *
+ * Requests made while a refresh is in flight join it instead of starting another download, and
+ * its results are sent to every subscriber, whichever screen or widget asked for it. Refreshes
+ * run one at a time on a single long-lived thread.
+ */
+public class RefreshCoordinator {
+    private static final String TAG = RefreshCoordinator.class.getSimpleName();
+    private static RefreshCoordinator instance;
+
+    private final Context mContext;
+    private final ExecutorService mExecutorService = Executors.newSingleThreadExecutor();
+    private final LinkedHashSet<DownloadResult> mSubscribers = new LinkedHashSet<>();
+    private Refresh mRefresh;
+
+    public static synchronized RefreshCoordinator getInstance(Context context) {
+        if (instance == null) {
+            instance = new RefreshCoordinator(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private RefreshCoordinator(Context context) {
+        mContext = context;
+    }
+
+    /* Be notified of every refresh, until unsubscribe() is called */
+    public synchronized void subscribe(DownloadResult subscriber) {
+        mSubscribers.add(subscriber);
+    }
+
+    public synchronized void unsubscribe(DownloadResult subscriber) {
+        mSubscribers.remove(subscriber);
+        if (mRefresh != null) {
+            mRefresh.mCallbacks.remove(subscriber);
+        }
+    }
+
+    public synchronized boolean isRefreshing() {
+        return mRefresh != null;
+    }
+
+    /**
+     * Start a refresh, or join the one in flight. The callback, which may be null, is only
+     * notified of this refresh.
+     */
+    public synchronized void requestRefresh(DownloadResult callback) {
+        if (mRefresh == null) {
+            startRefresh();
+        }
+        if (callback != null) {
+            mRefresh.mCallbacks.add(callback);
+        }
+    }
+
+    /**
+     * Cancel the refresh in flight, if any, and start a new one: to be used when the in flight
+     * refresh is outdated, e.g. because the saved networks changed.
+     */
+    public synchronized void restartRefresh(DownloadResult callback) {
+        ArrayList<DownloadResult> callbacks = new ArrayList<>();
+        if (mRefresh != null) {
+            callbacks.addAll(mRefresh.mCallbacks);
+            mRefresh.mFuture.cancel(true);
+        }
+        startRefresh();
+        mRefresh.mCallbacks.addAll(callbacks);
+        if (callback != null) {
+            mRefresh.mCallbacks.add(callback);
+        }
+    }
+
+    private void startRefresh() {
+        final Refresh refresh = new Refresh();
+        final JSONDownloadRunnable download = new JSONDownloadRunnable(mContext, refresh);
+        mRefresh = refresh;
+        refresh.mFuture = mExecutorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                String error = "Refresh interrupted";
+                try {
+                    download.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Refresh failed", e);
+                    error = "Refresh failed: " + e.getClass().getSimpleName() + " (" + e.getMessage() + ")";
+                } finally {
+                    /*
+                     * Ends the refresh if the download did not report its completion, so that
+                     * the next requests start a new one. Does nothing otherwise.
+                     */
+                    refresh.onDownloadResultCallback(error);
+                }
+            }
+        });
+    }
+
+    /* Receivers of the results of the refresh, or null if it has been replaced by another one */
+    private synchronized ArrayList<DownloadResult> getReceivers(Refresh refresh, boolean completed) {
+        if (refresh != mRefresh) {
+            return null;
+        }
+        LinkedHashSet<DownloadResult> receivers = new LinkedHashSet<>(mSubscribers);
+        receivers.addAll(refresh.mCallbacks);
+        if (completed) {
+            mRefresh = null;
+        }
+        return new ArrayList<>(receivers);
+    }
+
+    private class Refresh implements DownloadResult {
+        final LinkedHashSet<DownloadResult> mCallbacks = new LinkedHashSet<>();
+        Future<?> mFuture;
+
+        @Override
+        public void onDownloadResultCallback(String error) {
+            ArrayList<DownloadResult> receivers = getReceivers(this, true);
+            if (receivers == null) {
+                return;
+            }
+            for (DownloadResult receiver : receivers) {
+                receiver.onDownloadResultCallback(error);
+            }
+        }
+
+        @Override
+        public void onDownloadResultCallback(int progress) {
+            ArrayList<DownloadResult> receivers = getReceivers(this, progress == 100);
+            if (receivers == null) {
+                return;
+            }
+            for (DownloadResult receiver : receivers) {
+                receiver.onDownloadResultCallback(progress);
+            }
+        }
+    }
+}
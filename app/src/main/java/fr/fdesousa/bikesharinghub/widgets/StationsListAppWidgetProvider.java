@@ -27,33 +27,17 @@ import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.preference.PreferenceManager;
 import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.View;
 import android.widget.RemoteViews;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.DateFormat;
-import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.Collections;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import fr.fdesousa.bikesharinghub.db.StationsDataSource;
-import fr.fdesousa.bikesharinghub.db.NetworksDataSource;
-import fr.fdesousa.bikesharinghub.models.BikeNetwork;
-import fr.fdesousa.bikesharinghub.models.Station;
-import fr.fdesousa.bikesharinghub.parsers.BikeNetworkParser;
+import fr.fdesousa.bikesharinghub.models.DownloadResult;
+import fr.fdesousa.bikesharinghub.tasks.RefreshCoordinator;
 
 import fr.fdesousa.bikesharinghub.R;
 import fr.fdesousa.bikesharinghub.activities.StationsListActivity;
@@ -64,15 +48,12 @@ import fr.fdesousa.bikesharinghub.activities.StationsListActivity;
 public class StationsListAppWidgetProvider extends AppWidgetProvider {
     private static final String TAG = StationsListAppWidgetProvider.class.getSimpleName();
 
-    private static final String PREF_KEY_API_URL = "pref_api_url";
     private static final String PREF_KEY_DB_LAST_UPDATE = "db_last_update";
-    private static final String PREF_KEY_STRIP_ID_STATION = "pref_strip_id_station";
 
     public static final String EXTRA_ITEM = "be.brunoparmentier.openbikesharing.app.widget.EXTRA_ITEM";
     public static final String EXTRA_REFRESH_LIST_ONLY =
             "be.brunoparmentier.openbikesharing.app.widget.EXTRA_REFRESH_LIST_ONLY";
 
-    private ArrayList<Station> stations;
     private Context mContext;
 
     @Override
@@ -171,106 +152,33 @@ public class StationsListAppWidgetProvider extends AppWidgetProvider {
                 int widgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, -1);
                 mgr.partiallyUpdateAppWidget(widgetId, rv);
 
-                /* Download new data then update widget list */
-                NetworksDataSource networksDataSource = new NetworksDataSource(context);
-                ArrayList<String> networksId = networksDataSource.getNetworksId();
-                ArrayList<String> networksUrlList = new ArrayList<String>();
-                SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
-                String default_apiUrl = mContext.getResources().getString(R.string.pref_default_api_url);
-                for (String id : networksId) {
-                    String stationUrl = settings.getString(PREF_KEY_API_URL, default_apiUrl)
-                                + "networks/" + id;
-                    networksUrlList.add(stationUrl);
-                }
-                String[] networksUrl = networksUrlList.toArray(new String[networksUrlList.size()]);
-
-                new JSONDownloadTask().execute(networksUrl);
+                /* Download new data, the widget list is updated once it is stored */
+                RefreshCoordinator.getInstance(context).requestRefresh(
+                        new WidgetRefreshResult(context.getApplicationContext()));
             }
         }
     }
 
-    private class JSONDownloadTask extends AsyncTask<String, Void, String> {
+    /* Stored stations are broadcast by the refresh itself, only failures are handled here */
+    private static class WidgetRefreshResult implements DownloadResult {
+        private final Context mContext;
 
-        Exception error;
+        WidgetRefreshResult(Context context) {
+            mContext = context;
+        }
 
         @Override
-        protected String doInBackground(String... urls) {
-            if (urls.length == 0 || urls[0].isEmpty()) {
-                error = new Exception("No URL to fetch");
-                return null;
-            }
-            JSONArray networksArray = new JSONArray();
-            for (int i=0; i<urls.length; i++) {
-                try {
-                    StringBuilder response = new StringBuilder();
-                    URL url = new URL(urls[i]);
-                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                    if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                        BufferedReader input = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                        String strLine;
-                        while ((strLine = input.readLine()) != null) {
-                            response.append(strLine);
-                        }
-                        input.close();
-                    }
-                    networksArray.put(new JSONObject(response.toString()));
-                } catch (Exception e) {
-                    Log.e(TAG, urls[i] + ": " + e.getClass().getSimpleName() + " (" + e.getMessage() + ")");
-                }
-            }
-            if(networksArray.length() == 0) {
-                error = new Exception("Unable to fetch any response");
-            }
-            return networksArray.toString();
+        public void onDownloadResultCallback(String error) {
+            Log.d(TAG, error);
+            /* Update all views anyway, to show the refresh button again */
+            Intent refreshWidgetIntent = new Intent(mContext, StationsListAppWidgetProvider.class);
+            refreshWidgetIntent.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
+            refreshWidgetIntent.putExtra(EXTRA_REFRESH_LIST_ONLY, true);
+            mContext.sendBroadcast(refreshWidgetIntent);
         }
 
         @Override
-        protected void onPostExecute(final String result) {
-            final AppWidgetManager mgr = AppWidgetManager.getInstance(mContext);
-            final ComponentName cn = new ComponentName(mContext, StationsListAppWidgetProvider.class);
-            if (error != null) {
-                Log.d(TAG, error.getMessage());
-            } else {
-                /* parse result */
-                boolean stripId = PreferenceManager.getDefaultSharedPreferences(mContext)
-                    .getBoolean(PREF_KEY_STRIP_ID_STATION, false);
-                stations = null;
-                try {
-                    JSONArray rawNetworks = new JSONArray(result);
-
-                    for (int i = 0; i < rawNetworks.length(); i++) {
-                        JSONObject rawNetwork = rawNetworks.getJSONObject(i);
-                        try{
-                            BikeNetworkParser bikeNetworkParser = new BikeNetworkParser(rawNetwork.toString(), stripId);
-
-                            BikeNetwork bikeNetwork = bikeNetworkParser.getNetwork();
-                            if(stations == null) {
-                                stations = bikeNetwork.getStations();
-                            } else {
-                                stations.addAll(bikeNetwork.getStations());
-                            }
-                        } catch (ParseException e) {
-                            Log.e(TAG, "Error retreiving data of network " + (i+1) + " : " + e.getMessage());
-                        }
-                    }
-                } catch (JSONException e) {
-                        Log.e(TAG, e.getMessage());
-                }
-                if(stations != null) {
-                    Collections.sort(stations);
-                    StationsDataSource stationsDataSource = new StationsDataSource(mContext);
-                    stationsDataSource.storeStations(stations);
-
-                    PreferenceManager.getDefaultSharedPreferences(mContext).edit()
-                            .putLong(PREF_KEY_DB_LAST_UPDATE, System.currentTimeMillis())
-                            .apply();
-
-                    mgr.notifyAppWidgetViewDataChanged(mgr.getAppWidgetIds(cn), R.id.widgetStationsList);
-                }
-            }
-            /* Update all views anyway */
-            StationsListAppWidgetProvider.this.onUpdate(mContext, mgr, mgr.getAppWidgetIds(cn));
+        public void onDownloadResultCallback(int progress) {
         }
     }
 }
-